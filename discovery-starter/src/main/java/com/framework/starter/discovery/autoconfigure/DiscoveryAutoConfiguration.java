@@ -2,10 +2,15 @@ package com.framework.starter.discovery.autoconfigure;
 
 import com.framework.starter.discovery.client.DiscoveryClient;
 import com.framework.starter.discovery.client.EtcdDiscoveryClient;
+import com.framework.starter.discovery.client.FileDiscoveryClient;
 import com.framework.starter.discovery.client.ZookeeperDiscoveryClient;
+import com.framework.starter.discovery.config.DiscoveryProperties;
 import com.framework.starter.discovery.config.EtcdProperties;
+import com.framework.starter.discovery.config.FileDiscoveryProperties;
 import com.framework.starter.discovery.config.ZookeeperProperties;
+import com.framework.starter.discovery.snapshot.DiscoverySnapshotStore;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -23,22 +28,49 @@ import org.springframework.context.annotation.Configuration;
 @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
 @Configuration
 @ConditionalOnProperty(name = "discovery.enable", havingValue = "true")
-@AutoConfigureAfter({EtcdAutoConfiguration.class,ZookeeperAutoConfiguration.class})
+@AutoConfigureAfter({EtcdAutoConfiguration.class,ZookeeperAutoConfiguration.class,FileAutoConfiguration.class})
 @Slf4j
 public class DiscoveryAutoConfiguration {
 
+    @Bean
+    DiscoveryProperties discoveryProperties() {
+        return new DiscoveryProperties();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "discovery", name = "snapshot-enable", havingValue = "true", matchIfMissing = true)
+    DiscoverySnapshotStore discoverySnapshotStore(final DiscoveryProperties discoveryProperties) {
+        log.debug("try to create bean {}, path:{}", "DiscoverySnapshotStore", discoveryProperties.getSnapshotPath());
+        return new DiscoverySnapshotStore(discoveryProperties.getSnapshotPath());
+    }
+
     @Bean
     @ConditionalOnBean(EtcdProperties.class)
-    EtcdDiscoveryClient discoveryClient(final EtcdProperties etcdProperties){
+    EtcdDiscoveryClient discoveryClient(final EtcdProperties etcdProperties,
+                                        final DiscoveryProperties discoveryProperties,
+                                        final ObjectProvider<DiscoverySnapshotStore> snapshotStore){
         log.debug("try to create bean {}", "DiscoveryClient-etcd");
-        return new EtcdDiscoveryClient(etcdProperties);
+        EtcdDiscoveryClient discoveryClient = new EtcdDiscoveryClient(etcdProperties, snapshotStore.getIfAvailable());
+        discoveryClient.setCodec(discoveryProperties.getCodec());
+        return discoveryClient;
     }
 
     @Bean
     @ConditionalOnMissingBean(DiscoveryClient.class)
     @ConditionalOnBean(ZookeeperProperties.class)
-    ZookeeperDiscoveryClient discoveryClient(final ZookeeperProperties zookeeperProperties){
+    ZookeeperDiscoveryClient zookeeperDiscoveryClient(final ZookeeperProperties zookeeperProperties,
+                                                      final DiscoveryProperties discoveryProperties){
         log.debug("try to create bean {}", "DiscoveryClient-zookeeper");
-        return new ZookeeperDiscoveryClient(zookeeperProperties);
+        ZookeeperDiscoveryClient discoveryClient = new ZookeeperDiscoveryClient(zookeeperProperties);
+        discoveryClient.setCodec(discoveryProperties.getCodec());
+        return discoveryClient;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(DiscoveryClient.class)
+    @ConditionalOnBean(FileDiscoveryProperties.class)
+    FileDiscoveryClient fileDiscoveryClient(final FileDiscoveryProperties fileDiscoveryProperties){
+        log.debug("try to create bean {}", "DiscoveryClient-file");
+        return new FileDiscoveryClient(fileDiscoveryProperties);
     }
 }
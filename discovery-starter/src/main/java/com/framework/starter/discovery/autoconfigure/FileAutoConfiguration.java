@@ -0,0 +1,26 @@
+package com.framework.starter.discovery.autoconfigure;
+
+import com.framework.starter.discovery.config.FileDiscoveryProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 功能概述
+ * className:      FileAutoConfiguration
+ * package:        com.framework.starter.discovery.autoconfigure
+ * author:         Gavin.Xu
+ * date:           2021/7/9
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "discovery", name = "client", havingValue = "file")
+@Slf4j
+public class FileAutoConfiguration {
+
+    @Bean
+    FileDiscoveryProperties fileDiscoveryProperties() {
+        log.debug("try to create bean {}", "FileDiscoveryProperties");
+        return new FileDiscoveryProperties();
+    }
+}
@@ -20,7 +20,7 @@ public class ZookeeperAutoConfiguration {
 
     @Bean
     ZookeeperProperties zookeeperProperties() {
-        log.debug("try to create bean {}", "EtcdProperties");
-        return zookeeperProperties();
+        log.debug("try to create bean {}", "ZookeeperProperties");
+        return new ZookeeperProperties();
     }
 }
@@ -1,9 +1,11 @@
 package com.framework.starter.discovery.client;
 
 import com.framework.starter.discovery.service.ServiceEntity;
+import com.framework.util.json.ObjectMapperUtils;
 
-import java.net.InetSocketAddress;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * 功能概述
@@ -20,6 +22,16 @@ public abstract class DiscoveryClient {
      */
     public abstract void addAndKeep(String key,String value);
 
+    /**
+     * register an instance, the default implementation stores it as json, override it if the registry keeps
+     * values in another encoding
+     * @param key
+     * @param serviceEntity
+     */
+    public void addAndKeep(String key, ServiceEntity serviceEntity) {
+        addAndKeep(key, ObjectMapperUtils.toJSON(serviceEntity));
+    }
+
     /**
      * get values by key or key prefix
      * @param key
@@ -28,4 +40,69 @@ public abstract class DiscoveryClient {
     public abstract Set<ServiceEntity> findServices(String key);
 
     public abstract void watch(String key);
+
+    /**
+     * stop watching the key and drop its cached services, the lookups of the key read the registry again. the
+     * default implementation keeps the watch, override it if the watches hold resources
+     * @param key
+     */
+    public void unwatch(String key) {
+    }
+
+    /**
+     * non-blocking {@link #addAndKeep(String, String)}, the default implementation runs the blocking one on the
+     * calling thread, override it if the registry has an async api
+     * @param key
+     * @param value
+     * @return completes when the key is registered
+     */
+    public CompletableFuture<Void> addAndKeepAsync(String key, String value) {
+        return call(() -> {
+            addAndKeep(key, value);
+            return null;
+        });
+    }
+
+    /**
+     * non-blocking {@link #addAndKeep(String, ServiceEntity)}
+     * @param key
+     * @param serviceEntity
+     * @return completes when the instance is registered
+     */
+    public CompletableFuture<Void> addAndKeepAsync(String key, ServiceEntity serviceEntity) {
+        return addAndKeepAsync(key, ObjectMapperUtils.toJSON(serviceEntity));
+    }
+
+    /**
+     * non-blocking {@link #findServices(String)}, the default implementation runs the blocking one on the calling
+     * thread, override it if the registry has an async api
+     * @param key
+     * @return completes with the services, never null
+     */
+    public CompletableFuture<Set<ServiceEntity>> findServicesAsync(String key) {
+        return call(() -> findServices(key));
+    }
+
+    /**
+     * non-blocking {@link #watch(String)}, the default implementation runs the blocking one on the calling thread,
+     * override it if the registry has an async api
+     * @param key
+     * @return completes when the services of the key can be read from {@link #findServicesAsync(String)}
+     */
+    public CompletableFuture<Void> watchAsync(String key) {
+        return call(() -> {
+            watch(key);
+            return null;
+        });
+    }
+
+    private static <T> CompletableFuture<T> call(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(supplier.get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 }
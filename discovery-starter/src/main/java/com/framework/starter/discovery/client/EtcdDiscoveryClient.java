@@ -2,17 +2,24 @@ package com.framework.starter.discovery.client;
 
 import com.framework.starter.discovery.config.EtcdProperties;
 import com.framework.starter.discovery.event.RegisterEvent;
+import com.framework.starter.discovery.service.ServiceCache;
 import com.framework.starter.discovery.service.ServiceEntity;
-import com.framework.util.json.ObjectMapperUtils;
+import com.framework.starter.discovery.service.ServiceEntityCodec;
+import com.framework.starter.discovery.snapshot.DiscoverySnapshotStore;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import io.etcd.jetcd.*;
+import io.etcd.jetcd.common.exception.CompactedException;
 import io.etcd.jetcd.kv.GetResponse;
-import io.etcd.jetcd.lease.LeaseGrantResponse;
 import io.etcd.jetcd.lease.LeaseKeepAliveResponse;
+import io.etcd.jetcd.op.Op;
 import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
 import io.etcd.jetcd.options.WatchOption;
+import io.etcd.jetcd.support.CloseableClient;
+import io.etcd.jetcd.watch.WatchEvent;
 import io.etcd.jetcd.watch.WatchResponse;
+import io.grpc.stub.StreamObserver;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.Data;
 import lombok.NonNull;
@@ -21,8 +28,12 @@ import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 功能概述
@@ -39,86 +50,401 @@ public class EtcdDiscoveryClient extends DiscoveryClient implements ApplicationC
     private final EtcdProperties properties;
     private ApplicationContext context;
     private static final int MAX_RETRY = 5;
+    private static final Duration GRANT_RETRY_INITIAL_DELAY = Duration.ofMillis(500);
     private volatile boolean isRegister;
+    /**
+     * watched prefix -> instances under it, kept current by the watch events
+     */
+    private final Map<String, ServiceCache> caches = new ConcurrentHashMap<>();
+    /**
+     * watched prefix -> completes once its cache can be read
+     */
+    private final Map<String, CompletableFuture<Void>> readies = new ConcurrentHashMap<>();
+    /**
+     * registered key -> value, all of them live on the same lease
+     */
+    private final Map<String, ByteSequence> registrations = new ConcurrentHashMap<>();
+    /**
+     * encoding of the registered instances
+     */
+    private ServiceEntityCodec codec = ServiceEntityCodec.JSON;
+    /**
+     * the lease shared by all the registered keys, null before the first registration and after the lease is lost
+     */
+    private CompletableFuture<Long> lease;
+    private CloseableClient keepAlive;
+    private final AtomicBoolean reRegisterScheduled = new AtomicBoolean();
+    /**
+     * watched prefix -> listener of its current watch
+     */
+    private final Map<String, EtcdListener> watchers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("etcd-discovery-", true)
+    );
+
+    /**
+     * last good endpoints on local disk, null if disabled
+     */
+    private final DiscoverySnapshotStore snapshotStore;
+    /**
+     * watched prefixes with a snapshot save already scheduled
+     */
+    private final Set<String> pendingSaves = Sets.newConcurrentHashSet();
+    private static final long SNAPSHOT_SAVE_DELAY_SECONDS = 1;
 
     public EtcdDiscoveryClient(@NonNull EtcdProperties etcdProperties) {
+        this(etcdProperties, null);
+    }
+
+    public EtcdDiscoveryClient(@NonNull EtcdProperties etcdProperties, DiscoverySnapshotStore snapshotStore) {
         this.properties = etcdProperties;
+        this.snapshotStore = snapshotStore;
         String endpoints = etcdProperties.getEndpoints();
         client = Client.builder().endpoints(endpoints).build();
     }
 
     @Override
     public void addAndKeep(String key, String value) {
-        long leaseId = 0;
-        Lease leaseClient = this.client.getLeaseClient();
-        for (int i = 0; i < MAX_RETRY; i++) {
-            CompletableFuture<LeaseGrantResponse> grant = leaseClient.grant(this.properties.getLeaseTime().toMillis() / 1000, this.properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
-            try {
-                LeaseGrantResponse leaseGrantResponse = grant.get(5, TimeUnit.SECONDS);
-                leaseId = leaseGrantResponse.getID();
-                break;
-            } catch (Exception e) {
-                log.error("etcd get leaseId error", e);
-            }
+        await(key, addAndKeepAsync(key, value));
+    }
+
+    @Override
+    public void addAndKeep(String key, ServiceEntity serviceEntity) {
+        await(key, addAndKeepAsync(key, serviceEntity));
+    }
+
+    private void await(String key, CompletableFuture<Void> registered) {
+        try {
+            await(registered);
+        } catch (Exception e) {
+            log.warn("addAndKeep key:{} not confirmed yet, it will be retried in the background", key, e);
         }
-        if (leaseId == 0) {
-            log.warn("addAndKeep key:{},value:{} can't get a leaseId, check etcd connection...");
-        }
-        KV kvClient = this.client.getKVClient();
-        ByteSequence putKey = ByteSequence.from(key.getBytes());
-        ByteSequence putValue = ByteSequence.from(value.getBytes());
-        kvClient.put(putKey, putValue, PutOption.newBuilder().withLeaseId(leaseId).build());
-        final long finalId = leaseId;
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1,
-                new DefaultThreadFactory("etcd-keep-")
-        );
-        executor.scheduleAtFixedRate(() -> {
-            try {
-                LeaseKeepAliveResponse response = leaseClient.keepAliveOnce(finalId).get();
-                if (response.getTTL() == 0){
-                    executor.shutdown();
-                    addAndKeep(key,value);
+    }
+
+    @Override
+    public CompletableFuture<Void> addAndKeepAsync(String key, String value) {
+        return register(key, ByteSequence.from(value, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public CompletableFuture<Void> addAndKeepAsync(String key, ServiceEntity serviceEntity) {
+        return register(key, ByteSequence.from(this.codec.encode(serviceEntity)));
+    }
+
+    private CompletableFuture<Void> register(String key, ByteSequence value) {
+        registrations.put(key, value);
+        return obtainLease()
+                .thenCompose(leaseId -> this.client.getKVClient().put(
+                        ByteSequence.from(key.getBytes()),
+                        value,
+                        PutOption.newBuilder().withLeaseId(leaseId).build()))
+                .<Void>thenApply(response -> null)
+                .whenComplete((v, throwable) -> {
+                    if (throwable != null) {
+                        log.warn("addAndKeep key:{} error, check etcd connection...", key, throwable);
+                        scheduleReRegister();
+                    }
+                });
+    }
+
+    /**
+     * all the keys of this process share one lease, kept alive by a single keep alive stream
+     * @return completes with the lease id
+     */
+    private synchronized CompletableFuture<Long> obtainLease() {
+        if (this.lease == null || this.lease.isCompletedExceptionally()) {
+            this.lease = grantLease(MAX_RETRY);
+        }
+        return this.lease;
+    }
+
+    private CompletableFuture<Long> grantLease(int attempts) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        grantLease(attempts, GRANT_RETRY_INITIAL_DELAY.toNanos(), result);
+        return result;
+    }
+
+    /**
+     * a failed grant is retried after a delay doubling from {@link #GRANT_RETRY_INITIAL_DELAY} up to the schedule
+     * lease time, so an etcd outage isn't hammered with grants
+     */
+    private void grantLease(int attempts, long delayNanos, CompletableFuture<Long> result) {
+        this.client.getLeaseClient()
+                .grant(this.properties.getLeaseTime().toMillis() / 1000, this.properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((response, throwable) -> {
+                    if (throwable == null) {
+                        keepAlive(response.getID());
+                        result.complete(response.getID());
+                    } else if (attempts > 1) {
+                        log.warn("etcd get leaseId error, retry in {}ms", TimeUnit.NANOSECONDS.toMillis(delayNanos), throwable);
+                        long nextDelayNanos = Math.min(delayNanos * 2, this.properties.getScheduleLeaseTime().toNanos());
+                        this.executor.schedule(() -> grantLease(attempts - 1, nextDelayNanos, result),
+                                delayNanos, TimeUnit.NANOSECONDS);
+                    } else {
+                        log.error("etcd get leaseId error", throwable);
+                        result.completeExceptionally(throwable);
+                    }
+                });
+    }
+
+    private synchronized void keepAlive(long grantedId) {
+        this.keepAlive = this.client.getLeaseClient().keepAlive(grantedId, new StreamObserver<LeaseKeepAliveResponse>() {
+            @Override
+            public void onNext(LeaseKeepAliveResponse response) {
+                if (response.getTTL() <= 0) {
+                    onLeaseLost(grantedId, null);
                 }
-            } catch (Exception e) {
-                log.error("etcd keepAliveOnce error", e);
             }
-        }, 0, this.properties.getScheduleLeaseTime().toNanos(), TimeUnit.NANOSECONDS);
 
+            @Override
+            public void onError(Throwable throwable) {
+                onLeaseLost(grantedId, throwable);
+            }
+
+            @Override
+            public void onCompleted() {
+                onLeaseLost(grantedId, null);
+            }
+        });
+        log.info("etcd lease granted, leaseId:{}", grantedId);
+    }
+
+    private synchronized void onLeaseLost(long lostId, Throwable throwable) {
+        if (this.lease == null || !this.lease.isDone() || this.lease.isCompletedExceptionally()
+                || this.lease.join() != lostId) {
+            return;
+        }
+        log.warn("etcd lease lost, leaseId:{}, re-register {} keys", lostId, registrations.size(), throwable);
+        if (this.keepAlive != null) {
+            this.keepAlive.close();
+            this.keepAlive = null;
+        }
+        this.lease = null;
+        this.executor.execute(this::reRegister);
+    }
+
+    /**
+     * put all the registered keys back under the current lease in one transaction
+     */
+    private void reRegister() {
+        if (registrations.isEmpty()) {
+            return;
+        }
+        obtainLease().thenCompose(leaseId -> {
+            PutOption putOption = PutOption.newBuilder().withLeaseId(leaseId).build();
+            Op[] puts = registrations.entrySet().stream()
+                    .map(e -> Op.put(ByteSequence.from(e.getKey().getBytes()), e.getValue(), putOption))
+                    .toArray(Op[]::new);
+            return this.client.getKVClient().txn().Then(puts).commit();
+        }).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                log.error("etcd re-register error", throwable);
+                scheduleReRegister();
+            } else {
+                log.info("etcd re-register {} keys", registrations.size());
+            }
+        });
+    }
+
+    private void scheduleReRegister() {
+        if (!this.reRegisterScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        this.executor.schedule(() -> {
+            this.reRegisterScheduled.set(false);
+            reRegister();
+        }, this.properties.getScheduleLeaseTime().toNanos(), TimeUnit.NANOSECONDS);
     }
 
     @Override
     public Set<ServiceEntity> findServices(String key) {
-        KV kvClient = client.getKVClient();
-        ByteSequence keyBytes = ByteSequence.from(key.getBytes());
-        Set<ServiceEntity> serviceEntities = Sets.newHashSet();
         try {
-            CompletableFuture<GetResponse> future = kvClient.get(keyBytes, GetOption.newBuilder().withPrefix(keyBytes).build());
-            GetResponse response = future.get();
-            for (KeyValue kv : response.getKvs()) {
-                String value = new String(kv.getValue().getBytes());
-                ServiceEntity serviceEntity = ObjectMapperUtils.fromJSON(value, ServiceEntity.class);
-                String[] hostPort = serviceEntity.getEndPoint().split(":");
-                serviceEntity.setHost(hostPort[0]);
-                serviceEntity.setPort(Integer.parseInt(hostPort[1]));
-                log.debug("find service info:{}", serviceEntity);
-                serviceEntities.add(serviceEntity);
-            }
+            return await(findServicesAsync(key));
         } catch (Exception e) {
             log.warn("EtcdClient getValues error!", e);
+            return Sets.newHashSet();
         }
-        return serviceEntities;
+    }
+
+    @Override
+    public CompletableFuture<Set<ServiceEntity>> findServicesAsync(String key) {
+        ServiceCache cache = caches.get(key);
+        CompletableFuture<Void> ready = readies.get(key);
+        if (cache != null && ready != null && ready.isDone()) {
+            return CompletableFuture.completedFuture(cache.getServices());
+        }
+        // not watched, or its initial listing is still running: ask etcd like an unwatched key
+        return list(key)
+                .<Set<ServiceEntity>>thenApply(response -> Sets.newHashSet(toServiceEntities(response).values()))
+                .exceptionally(throwable -> {
+                    log.warn("EtcdClient getValues error!", throwable);
+                    if (snapshotStore != null) {
+                        return Sets.newHashSet(snapshotStore.load(key).values());
+                    }
+                    return Sets.newHashSet();
+                });
     }
 
     @Override
     public void watch(String key) {
+        try {
+            await(watchAsync(key));
+        } catch (Exception e) {
+            log.warn("etcd watch key:{} not ready yet, it will be filled in the background", key, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> watchAsync(String key) {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        CompletableFuture<Void> existing = readies.putIfAbsent(key, ready);
+        if (existing != null) {
+            log.debug("etcd key:{} already watched", key);
+            return existing;
+        }
         log.debug("etcd start watch key:{} ", key);
-        CountDownLatch latch = new CountDownLatch(1);
-        Watch watchClient = this.client.getWatchClient();
+        ServiceCache cache = new ServiceCache(key);
+        caches.put(key, cache);
+        executor.execute(() -> {
+            if (snapshotStore != null && cache.reset(snapshotStore.load(key))) {
+                // serve the last good endpoints right away and revalidate against etcd in the background
+                ready.complete(null);
+                startWatch(cache).thenAccept(changed -> {
+                    if (changed) {
+                        publish(cache, cache.getRevision());
+                    }
+                });
+            } else {
+                startWatch(cache).thenAccept(changed -> ready.complete(null));
+            }
+        });
+        return ready;
+    }
+
+    @Override
+    public void unwatch(String key) {
+        if (readies.remove(key) == null) {
+            return;
+        }
+        log.debug("etcd stop watch key:{} ", key);
+        caches.remove(key);
+        EtcdListener listener = watchers.remove(key);
+        if (listener != null) {
+            listener.close();
+        }
+    }
+
+    /**
+     * list the prefix and watch it from the revision right after the listing, so no change in between is lost.
+     * a failed listing is retried until it succeeds
+     * @return completes with whether the listing changed the cache
+     */
+    private CompletableFuture<Boolean> startWatch(ServiceCache cache) {
+        CompletableFuture<Boolean> started = new CompletableFuture<>();
+        relist(cache).whenComplete((changed, throwable) -> {
+            if (caches.get(cache.getPrefix()) != cache) {
+                // unwatched meanwhile
+                started.complete(false);
+                return;
+            }
+            if (throwable != null) {
+                log.warn("etcd list key:{} error, retry later", cache.getPrefix(), throwable);
+                executor.schedule(() -> startWatch(cache).thenAccept(started::complete),
+                        this.properties.getWatchRetryInterval().toNanos(), TimeUnit.NANOSECONDS);
+                return;
+            }
+            resumeWatch(cache);
+            started.complete(changed);
+        });
+        return started;
+    }
+
+    /**
+     * watch the prefix from the next revision the cache hasn't seen
+     */
+    private void resumeWatch(ServiceCache cache) {
+        String key = cache.getPrefix();
+        if (caches.get(key) != cache) {
+            return;
+        }
+        long fromRevision = cache.getRevision() + 1;
+        log.debug("etcd watch key:{} from revision:{}", key, fromRevision);
         WatchOption watchOption = WatchOption.newBuilder()
                 .withPrefix(ByteSequence.from(key.getBytes()))
+                .withRevision(fromRevision)
                 .build();
-        watchClient.watch(ByteSequence.from(key.getBytes()), watchOption, new EtcdListener(context, latch));
-        log.debug("etcd end watch key:{} ", key);
+        EtcdListener listener = new EtcdListener(cache);
+        listener.watcher = this.client.getWatchClient()
+                .watch(ByteSequence.from(key.getBytes()), watchOption, listener);
+        EtcdListener previous = watchers.put(key, listener);
+        if (previous != null) {
+            previous.close();
+        }
+        if (caches.get(key) != cache && watchers.remove(key, listener)) {
+            // unwatched while starting
+            listener.close();
+        }
+    }
+
+    /**
+     * replace the cache content with a fresh listing
+     * @return completes with whether the content changed
+     */
+    private CompletableFuture<Boolean> relist(ServiceCache cache) {
+        return list(cache.getPrefix()).thenApply(response -> {
+            boolean changed = cache.reset(toServiceEntities(response));
+            cache.setRevision(response.getHeader().getRevision());
+            saveSnapshot(cache);
+            return changed;
+        });
+    }
+
+    /**
+     * save the cache to disk, the changes within one second are saved together
+     */
+    private void saveSnapshot(ServiceCache cache) {
+        if (snapshotStore == null || !pendingSaves.add(cache.getPrefix())) {
+            return;
+        }
+        executor.schedule(() -> {
+            pendingSaves.remove(cache.getPrefix());
+            snapshotStore.save(cache.getPrefix(), cache.getRevision(), cache.getEntities());
+        }, SNAPSHOT_SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * get all the kvs under the prefix
+     * @param key prefix
+     */
+    private CompletableFuture<GetResponse> list(String key) {
+        KV kvClient = client.getKVClient();
+        ByteSequence keyBytes = ByteSequence.from(key.getBytes());
+        return kvClient.get(keyBytes, GetOption.newBuilder().withPrefix(keyBytes).build());
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws InterruptedException, ExecutionException, TimeoutException {
+        return future.get(this.properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return etcd key -> instance
+     */
+    private static Map<String, ServiceEntity> toServiceEntities(GetResponse response) {
+        Map<String, ServiceEntity> serviceEntities = Maps.newHashMapWithExpectedSize(response.getKvs().size());
+        for (KeyValue kv : response.getKvs()) {
+            ServiceEntity serviceEntity = toServiceEntity(kv);
+            log.debug("find service info:{}", serviceEntity);
+            serviceEntities.put(kv.getKey().toString(StandardCharsets.UTF_8), serviceEntity);
+        }
+        return serviceEntities;
+    }
+
+    private static ServiceEntity toServiceEntity(KeyValue kv) {
+        return ServiceEntityCodec.decode(kv.getValue().getBytes());
+    }
+
+    private void publish(ServiceCache cache, long revision) {
+        context.publishEvent(new RegisterEvent(this, cache.getPrefix(), revision));
     }
 
     @Override
@@ -126,32 +452,102 @@ public class EtcdDiscoveryClient extends DiscoveryClient implements ApplicationC
         this.context = applicationContext;
     }
 
-    static class EtcdListener implements Watch.Listener {
+    class EtcdListener implements Watch.Listener {
 
-        private final ApplicationContext context;
-        private final CountDownLatch latch;
+        private final ServiceCache cache;
+        private volatile Watch.Watcher watcher;
+        /**
+         * closed on purpose, the watch must not be resumed
+         */
+        private volatile boolean closed;
 
-        public EtcdListener(ApplicationContext context, CountDownLatch latch) {
-            this.context = context;
-            this.latch = latch;
+        public EtcdListener(ServiceCache cache) {
+            this.cache = cache;
+        }
+
+        void close() {
+            this.closed = true;
+            if (this.watcher != null) {
+                this.watcher.close();
+            }
         }
 
         @Override
         public void onNext(WatchResponse response) {
-            latch.countDown();
             log.debug("etcd event trigger, thread:{}", Thread.currentThread().getName());
-            context.publishEvent(new RegisterEvent(this));
+            boolean changed = false;
+            long revision = cache.getRevision();
+            for (WatchEvent event : response.getEvents()) {
+                String key = event.getKeyValue().getKey().toString(StandardCharsets.UTF_8);
+                revision = Math.max(revision, event.getKeyValue().getModRevision());
+                switch (event.getEventType()) {
+                    case PUT:
+                        try {
+                            changed |= cache.put(key, toServiceEntity(event.getKeyValue()));
+                        } catch (Exception e) {
+                            log.warn("etcd skip bad value of key:{}", key, e);
+                        }
+                        break;
+                    case DELETE:
+                        changed |= cache.remove(key);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            cache.setRevision(revision);
+            if (changed) {
+                saveSnapshot(cache);
+                publish(cache, revision);
+            }
         }
 
         @Override
         public void onError(Throwable throwable) {
-
+            if (closed) {
+                return;
+            }
+            if (throwable instanceof CompactedException) {
+                // the revision we'd resume from is gone, only a full listing can catch up
+                log.warn("etcd watch key:{} revision:{} compacted, relist", cache.getPrefix(), cache.getRevision());
+                closed = true;
+                relist(cache).whenComplete((changed, e) -> {
+                    if (e != null) {
+                        log.warn("etcd relist key:{} error, retry later", cache.getPrefix(), e);
+                        scheduleResume(this);
+                        return;
+                    }
+                    if (changed) {
+                        publish(cache, cache.getRevision());
+                    }
+                    resumeWatch(cache);
+                });
+                return;
+            }
+            log.warn("etcd watch key:{} error, resume from revision:{}", cache.getPrefix(), cache.getRevision() + 1, throwable);
+            scheduleResume(this);
         }
 
         @Override
         public void onCompleted() {
-
+            if (closed) {
+                return;
+            }
+            log.debug("etcd watch key:{} completed, resume from revision:{}", cache.getPrefix(), cache.getRevision() + 1);
+            scheduleResume(this);
         }
     }
 
+    private void scheduleResume(EtcdListener listener) {
+        listener.closed = true;
+        executor.schedule(() -> {
+            try {
+                resumeWatch(listener.cache);
+            } catch (Exception e) {
+                log.warn("etcd resume watch key:{} error, retry later", listener.cache.getPrefix(), e);
+                scheduleResume(listener);
+            }
+        }, this.properties.getWatchRetryInterval().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
 }
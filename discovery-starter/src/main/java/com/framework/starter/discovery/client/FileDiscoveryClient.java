@@ -0,0 +1,252 @@
+package com.framework.starter.discovery.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.framework.starter.discovery.config.FileDiscoveryProperties;
+import com.framework.starter.discovery.event.RegisterEvent;
+import com.framework.starter.discovery.service.ServiceCache;
+import com.framework.starter.discovery.service.ServiceEntity;
+import com.framework.starter.discovery.service.ServiceEntityCodec;
+import com.framework.starter.discovery.util.DiscoveryUtil;
+import com.framework.util.json.ObjectMapperUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 功能概述    serves the instances from configuration and an optional local json file, no registry involved.
+ * the instances registered by this process are kept in memory, so a single box can run both sides.
+ * the file is polled and every watched key whose instances changed gets a {@link RegisterEvent}.
+ * className:      FileDiscoveryClient
+ * package:        com.framework.starter.discovery.client
+ * author:         Gavin.Xu
+ * date:           2021/7/9
+ */
+@Slf4j
+public class FileDiscoveryClient extends DiscoveryClient implements ApplicationContextAware {
+
+    private static final TypeReference<Map<String, List<ServiceEntity>>> FILE_TYPE =
+            new TypeReference<Map<String, List<ServiceEntity>>>() {
+            };
+
+    private final FileDiscoveryProperties properties;
+    private ApplicationContext context;
+    /**
+     * instance key -> instance, from configuration and the file
+     */
+    private volatile Map<String, ServiceEntity> loaded = ImmutableMap.of();
+    /**
+     * instance key -> instance registered by this process
+     */
+    private final Map<String, ServiceEntity> registrations = new ConcurrentHashMap<>();
+    /**
+     * watched key -> instances under it
+     */
+    private final Map<String, ServiceCache> caches = new ConcurrentHashMap<>();
+    private final AtomicLong revision = new AtomicLong();
+    private volatile FileTime lastModified;
+    /**
+     * the file was missing at the last load, so a missing file is only logged once until it's loaded again
+     */
+    private volatile boolean missing;
+    private ScheduledExecutorService executor;
+
+    public FileDiscoveryClient(@NonNull FileDiscoveryProperties properties) {
+        this.properties = properties;
+        this.loaded = load();
+        if (StringUtils.isNotBlank(properties.getPath())) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("file-discovery-", true));
+            long interval = properties.getPollInterval().toMillis();
+            this.executor.scheduleWithFixedDelay(this::reloadIfModified, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void addAndKeep(String key, String value) {
+        addAndKeep(key, ServiceEntityCodec.decode(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void addAndKeep(String key, ServiceEntity serviceEntity) {
+        registrations.put(key, serviceEntity);
+        refresh();
+    }
+
+    @Override
+    public Set<ServiceEntity> findServices(String key) {
+        ServiceCache cache = caches.get(key);
+        if (cache != null) {
+            return cache.getServices();
+        }
+        return Sets.newHashSet(select(key).values());
+    }
+
+    /**
+     * under the lock of {@link #refresh()}, so a key watched during a refresh gets the instances it applied
+     */
+    @Override
+    public synchronized void watch(String key) {
+        caches.computeIfAbsent(key, k -> {
+            ServiceCache cache = new ServiceCache(k);
+            cache.reset(select(k));
+            cache.setRevision(revision.get());
+            return cache;
+        });
+    }
+
+    @Override
+    public synchronized void unwatch(String key) {
+        caches.remove(key);
+    }
+
+    private void reloadIfModified() {
+        try {
+            Path file = Paths.get(properties.getPath());
+            if (Files.notExists(file)) {
+                if (!missing) {
+                    // drop the instances of the file that's gone
+                    this.loaded = load();
+                    refresh();
+                }
+                return;
+            }
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(lastModified)) {
+                return;
+            }
+            this.loaded = load();
+            refresh();
+        } catch (IOException e) {
+            log.warn("discovery file {} can't be read", properties.getPath(), e);
+        } catch (RuntimeException e) {
+            log.warn("discovery file {} reload error", properties.getPath(), e);
+        }
+    }
+
+    /**
+     * apply the current instances to the watched keys, publishing the keys that changed
+     */
+    private synchronized void refresh() {
+        long current = revision.incrementAndGet();
+        for (ServiceCache cache : caches.values()) {
+            if (cache.reset(select(cache.getPrefix()))) {
+                cache.setRevision(current);
+                if (context != null) {
+                    context.publishEvent(new RegisterEvent(this, cache.getPrefix(), current));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param key service key or its prefix
+     * @return instance key -> instance of all the instance keys starting with the key
+     */
+    private Map<String, ServiceEntity> select(String key) {
+        Map<String, ServiceEntity> selected = Maps.newHashMap();
+        this.loaded.forEach((instanceKey, serviceEntity) -> {
+            if (instanceKey.startsWith(key)) {
+                selected.put(instanceKey, serviceEntity);
+            }
+        });
+        this.registrations.forEach((instanceKey, serviceEntity) -> {
+            if (instanceKey.startsWith(key)) {
+                selected.put(instanceKey, serviceEntity);
+            }
+        });
+        return selected;
+    }
+
+    /**
+     * @return instance key -> instance of the configuration and the file, the file wins
+     */
+    private Map<String, ServiceEntity> load() {
+        Map<String, ServiceEntity> instances = Maps.newHashMap();
+        putAll(instances, properties.getServices());
+        if (StringUtils.isNotBlank(properties.getPath())) {
+            Path file = Paths.get(properties.getPath());
+            try {
+                if (Files.notExists(file)) {
+                    // no instance from the file until it shows up
+                    if (!this.missing) {
+                        log.warn("discovery file {} not found, it will be loaded once it exists", file);
+                    }
+                    this.missing = true;
+                    this.lastModified = null;
+                    return ImmutableMap.copyOf(instances);
+                }
+                this.lastModified = Files.getLastModifiedTime(file);
+                Map<String, List<ServiceEntity>> services = ObjectMapperUtils.value(
+                        ObjectMapperUtils.fromJson(Files.readAllBytes(file)), FILE_TYPE);
+                putAll(instances, services);
+                this.missing = false;
+                log.info("discovery file {} loaded, size:{}", file, instances.size());
+            } catch (IOException e) {
+                log.warn("discovery file {} can't be read", file, e);
+            }
+        }
+        return ImmutableMap.copyOf(instances);
+    }
+
+    private static void putAll(Map<String, ServiceEntity> instances, Map<String, List<ServiceEntity>> services) {
+        if (services == null) {
+            return;
+        }
+        services.forEach((serviceKey, serviceEntities) -> {
+            for (ServiceEntity configured : serviceEntities) {
+                // a copy, the configured instances are left as they are
+                String host = configured.getHost();
+                int port = configured.getPort();
+                if (host == null) {
+                    String[] hostPort = configured.getEndPoint().split(":");
+                    host = hostPort[0];
+                    port = Integer.parseInt(hostPort[1]);
+                }
+                String endPoint = host + ":" + port;
+                ServiceEntity serviceEntity = ServiceEntity.builder()
+                        .endPoint(endPoint)
+                        .host(host)
+                        .port(port)
+                        .lbWeight(configured.getLbWeight())
+                        .env(configured.getEnv())
+                        .build();
+                instances.put(DiscoveryUtil.getInstanceKey(serviceKey, endPoint), serviceEntity);
+            }
+        });
+    }
+
+    /**
+     * stop polling the file
+     */
+    public void close() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.context = applicationContext;
+    }
+}
@@ -1,37 +1,300 @@
 package com.framework.starter.discovery.client;
 
 import com.framework.starter.discovery.config.ZookeeperProperties;
+import com.framework.starter.discovery.event.RegisterEvent;
+import com.framework.starter.discovery.service.ServiceCache;
 import com.framework.starter.discovery.service.ServiceEntity;
+import com.framework.starter.discovery.service.ServiceEntityCodec;
+import com.google.common.collect.Sets;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.nodes.PersistentNode;
+import org.apache.curator.framework.recipes.nodes.PersistentNodeListener;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 功能概述
+ * 功能概述    registers instances as ephemeral nodes and serves the lookups from tree caches kept current by
+ * zookeeper watches. the nodes are recreated and the caches re-synced after the session expires.
  * className:      ZookeeperClient
  * package:        com.framework.starter.discovery.client
  * author:         Gavin.Xu
  * date:           2021/6/8
  */
-public class ZookeeperDiscoveryClient extends DiscoveryClient{
+@Data
+@Slf4j
+public class ZookeeperDiscoveryClient extends DiscoveryClient implements ApplicationContextAware {
 
-    private ZookeeperProperties zookeeperProperties;
+    private final CuratorFramework client;
+    private final ZookeeperProperties zookeeperProperties;
+    private ApplicationContext context;
+    /**
+     * encoding of the registered instances
+     */
+    private ServiceEntityCodec codec = ServiceEntityCodec.JSON;
+    /**
+     * registered key -> its ephemeral node
+     */
+    private final Map<String, PersistentNode> registrations = new ConcurrentHashMap<>();
+    /**
+     * watched key -> instances under it, kept current by the tree cache
+     */
+    private final Map<String, ServiceCache> caches = new ConcurrentHashMap<>();
+    /**
+     * watched key -> completes once the tree cache is initialized
+     */
+    private final Map<String, CompletableFuture<Void>> readies = new ConcurrentHashMap<>();
+    private final Map<String, TreeCache> treeCaches = new ConcurrentHashMap<>();
 
-    public ZookeeperDiscoveryClient(ZookeeperProperties zookeeperProperties) {
+    public ZookeeperDiscoveryClient(@NonNull ZookeeperProperties zookeeperProperties) {
         this.zookeeperProperties = zookeeperProperties;
+        this.client = CuratorFrameworkFactory.builder()
+                .connectString(zookeeperProperties.getConnectString())
+                .sessionTimeoutMs((int) zookeeperProperties.getSessionTimeout().toMillis())
+                .connectionTimeoutMs((int) zookeeperProperties.getConnectionTimeout().toMillis())
+                .retryPolicy(new ExponentialBackoffRetry((int) zookeeperProperties.getBaseSleepTime().toMillis(),
+                        zookeeperProperties.getMaxRetries()))
+                .build();
+        this.client.getConnectionStateListenable().addListener((c, newState) ->
+                log.info("zookeeper connection state changed to {}", newState));
+        this.client.start();
     }
 
     @Override
     public void addAndKeep(String key, String address) {
+        await(key, register(key, address.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void addAndKeep(String key, ServiceEntity serviceEntity) {
+        await(key, register(key, this.codec.encode(serviceEntity)));
+    }
 
+    private void await(String key, CompletableFuture<Void> registered) {
+        try {
+            registered.get(this.zookeeperProperties.getConnectionTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("addAndKeep key:{} not created yet, it will be created in the background", key);
+        } catch (Exception e) {
+            log.warn("addAndKeep key:{} error, check zookeeper connection...", key, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> addAndKeepAsync(String key, String value) {
+        return register(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public CompletableFuture<Void> addAndKeepAsync(String key, ServiceEntity serviceEntity) {
+        return register(key, this.codec.encode(serviceEntity));
+    }
+
+    /**
+     * the ephemeral node is created in the background and recreated whenever it's lost, e.g. after the session expired
+     * @return completes once the node exists with the value, never blocks
+     */
+    private CompletableFuture<Void> register(String key, byte[] value) {
+        String path = toPath(key);
+        AtomicBoolean started = new AtomicBoolean();
+        PersistentNode node = registrations.computeIfAbsent(key, k -> {
+            PersistentNode newNode = new PersistentNode(this.client, CreateMode.EPHEMERAL, false, path, value);
+            newNode.start();
+            started.set(true);
+            return newNode;
+        });
+        CompletableFuture<Void> created = whenCreated(node);
+        if (started.get()) {
+            return created;
+        }
+        // already registered, its data can only be replaced once it's created
+        return created.thenRun(() -> {
+            try {
+                node.setData(value);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @return completes once the node is created, at once if it already is
+     */
+    private static CompletableFuture<Void> whenCreated(PersistentNode node) {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        PersistentNodeListener listener = createdPath -> created.complete(null);
+        node.getListenable().addListener(listener);
+        created.whenComplete((v, e) -> node.getListenable().removeListener(listener));
+        if (node.getActualPath() != null) {
+            // created before the listener was added
+            created.complete(null);
+        }
+        return created;
     }
 
     @Override
     public Set<ServiceEntity> findServices(String key) {
-        return null;
+        ServiceCache cache = caches.get(key);
+        CompletableFuture<Void> ready = readies.get(key);
+        if (cache != null && ready != null && ready.isDone() && !ready.isCompletedExceptionally()) {
+            return cache.getServices();
+        }
+        // not watched, or its tree cache isn't initialized yet: read zookeeper like an unwatched key
+        return list(key);
+    }
+
+    /**
+     * read the children of the key from zookeeper, used for the keys not watched
+     */
+    private Set<ServiceEntity> list(String key) {
+        String path = toPath(key);
+        Set<ServiceEntity> services = Sets.newHashSet();
+        try {
+            List<String> children = this.client.getChildren().forPath(path);
+            for (String child : children) {
+                byte[] data = this.client.getData().forPath(path + "/" + child);
+                if (data != null && data.length > 0) {
+                    services.add(ServiceEntityCodec.decode(data));
+                }
+            }
+        } catch (KeeperException.NoNodeException e) {
+            log.debug("zookeeper key:{} has no instance", key);
+        } catch (Exception e) {
+            log.warn("ZookeeperClient getValues error!", e);
+        }
+        return services;
     }
 
     @Override
     public void watch(String key) {
+        try {
+            watchAsync(key).get(this.zookeeperProperties.getConnectionTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("zookeeper watch key:{} not ready yet, it will be filled in the background", key, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> watchAsync(String key) {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        CompletableFuture<Void> existing = readies.putIfAbsent(key, ready);
+        if (existing != null) {
+            log.debug("zookeeper key:{} already watched", key);
+            return existing;
+        }
+        log.debug("zookeeper start watch key:{} ", key);
+        String path = toPath(key);
+        ServiceCache cache = new ServiceCache(key);
+        caches.put(key, cache);
+        TreeCache treeCache = TreeCache.newBuilder(this.client, path).setCacheData(true).build();
+        treeCache.getListenable().addListener((c, event) -> onEvent(cache, path, ready, event));
+        treeCaches.put(key, treeCache);
+        try {
+            treeCache.start();
+        } catch (Exception e) {
+            ready.completeExceptionally(e);
+        }
+        return ready;
+    }
+
+    @Override
+    public void unwatch(String key) {
+        if (readies.remove(key) == null) {
+            return;
+        }
+        log.debug("zookeeper stop watch key:{} ", key);
+        caches.remove(key);
+        TreeCache treeCache = treeCaches.remove(key);
+        if (treeCache != null) {
+            treeCache.close();
+        }
+    }
 
+    private void onEvent(ServiceCache cache, String path, CompletableFuture<Void> ready, TreeCacheEvent event) {
+        boolean changed = false;
+        ChildData data = event.getData();
+        switch (event.getType()) {
+            case NODE_ADDED:
+            case NODE_UPDATED:
+                if (path.equals(data.getPath()) || data.getData() == null || data.getData().length == 0) {
+                    // the parent nodes carry no instance
+                    break;
+                }
+                try {
+                    changed = cache.put(data.getPath(), ServiceEntityCodec.decode(data.getData()));
+                    cache.setRevision(Math.max(cache.getRevision(), data.getStat().getMzxid()));
+                } catch (Exception e) {
+                    log.warn("zookeeper skip bad value of key:{}", data.getPath(), e);
+                }
+                break;
+            case NODE_REMOVED:
+                changed = cache.remove(data.getPath());
+                break;
+            case INITIALIZED:
+                ready.complete(null);
+                break;
+            default:
+                log.debug("zookeeper watch key:{} event:{}", cache.getPrefix(), event.getType());
+                break;
+        }
+        if (changed && ready.isDone()) {
+            context.publishEvent(new RegisterEvent(this, cache.getPrefix(), cache.getRevision()));
+        }
+    }
+
+    /**
+     * zookeeper paths can't end with the separator the service keys end with
+     */
+    private static String toPath(String key) {
+        if (key.length() > 1 && key.endsWith("/")) {
+            return key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    /**
+     * remove the registered nodes and stop the watches
+     */
+    public void close() {
+        this.treeCaches.values().forEach(TreeCache::close);
+        for (PersistentNode node : this.registrations.values()) {
+            try {
+                node.close();
+            } catch (IOException e) {
+                log.warn("zookeeper close node:{} error", node.getActualPath(), e);
+            }
+        }
+        this.client.close();
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.context = applicationContext;
     }
 }
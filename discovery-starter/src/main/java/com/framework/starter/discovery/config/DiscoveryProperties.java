@@ -0,0 +1,39 @@
+package com.framework.starter.discovery.config;
+
+import com.framework.starter.discovery.service.ServiceEntityCodec;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 功能概述
+ * className:      DiscoveryProperties
+ * package:        com.framework.starter.discovery.config
+ * author:         Gavin.Xu
+ * date:           2021/7/6
+ */
+@ConfigurationProperties("discovery")
+@Data
+public class DiscoveryProperties {
+    /**
+     * enable discovery
+     */
+    private boolean enable;
+    /**
+     * discovery client, etcd/zookeeper/file
+     */
+    private String client;
+    /**
+     * keep the last good endpoints of every watched service on local disk, used at startup and while the registry
+     * is unavailable
+     */
+    private boolean snapshotEnable = true;
+    /**
+     * directory of the snapshot files
+     */
+    private String snapshotPath = System.getProperty("user.home") + "/.discovery/snapshot";
+    /**
+     * encoding of the registered instances, json/binary. every reader decodes both, switch to binary once all the
+     * clients are upgraded
+     */
+    private ServiceEntityCodec codec = ServiceEntityCodec.JSON;
+}
@@ -28,7 +28,11 @@ public class EtcdProperties {
      */
     private Duration timeout = Duration.ofSeconds(10);
     /**
-     * schedule lease key time interval
+     * retry interval when the lease can't be granted or the keys can't be re-registered
      */
     private Duration scheduleLeaseTime  = Duration.ofSeconds(9);
+    /**
+     * delay before a failed watch is resumed
+     */
+    private Duration watchRetryInterval = Duration.ofSeconds(1);
 }
@@ -0,0 +1,34 @@
+package com.framework.starter.discovery.config;
+
+import com.framework.starter.discovery.service.ServiceEntity;
+import com.google.common.collect.Maps;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能概述
+ * className:      FileDiscoveryProperties
+ * package:        com.framework.starter.discovery.config
+ * author:         Gavin.Xu
+ * date:           2021/7/9
+ */
+@ConfigurationProperties("discovery.file")
+@Data
+public class FileDiscoveryProperties {
+    /**
+     * static instances, service key -> instances, e.g. discovery.file.services.[/services/event-server/v1/grpc/][0].host
+     */
+    private Map<String, List<ServiceEntity>> services = Maps.newHashMap();
+    /**
+     * json file of the same layout as services, optional. reloaded when it changes
+     */
+    private String path;
+    /**
+     * interval of checking the file for changes
+     */
+    private Duration pollInterval = Duration.ofSeconds(1);
+}
@@ -1,5 +1,6 @@
 package com.framework.starter.discovery.config;
 
+import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.time.Duration;
@@ -12,6 +13,26 @@ import java.time.Duration;
  * date:           2021/6/8
  */
 @ConfigurationProperties("zookeeper")
+@Data
 public class ZookeeperProperties {
-
+    /**
+     * zookeeper servers, host:port spe by ','
+     */
+    private String connectString;
+    /**
+     * session timeout, the registered nodes are removed once the session expires
+     */
+    private Duration sessionTimeout = Duration.ofSeconds(60);
+    /**
+     * connection timeout, also the max wait of the blocking calls
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(15);
+    /**
+     * initial sleep between connection retries, doubled on every retry
+     */
+    private Duration baseSleepTime = Duration.ofSeconds(1);
+    /**
+     * max connection retries of one operation
+     */
+    private int maxRetries = 3;
 }
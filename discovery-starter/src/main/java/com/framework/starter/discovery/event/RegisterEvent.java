@@ -10,6 +10,16 @@ import org.springframework.context.ApplicationEvent;
  * date:           2021/6/8
  */
 public class RegisterEvent extends ApplicationEvent {
+
+    /**
+     * the watched service key that changed, null means any key may have changed
+     */
+    private final String key;
+    /**
+     * registry revision of the change, 0 if the registry has no revisions
+     */
+    private final long revision;
+
     /**
      * Create a new {@code ApplicationEvent}.
      *
@@ -17,6 +27,25 @@ public class RegisterEvent extends ApplicationEvent {
      *               which the event is associated (never {@code null})
      */
     public RegisterEvent(Object source) {
+        this(source, null, 0);
+    }
+
+    /**
+     * @param source   the object on which the event initially occurred
+     * @param key      the watched service key that changed
+     * @param revision registry revision of the change
+     */
+    public RegisterEvent(Object source, String key, long revision) {
         super(source);
+        this.key = key;
+        this.revision = revision;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getRevision() {
+        return revision;
     }
 }
@@ -1,7 +1,11 @@
 package com.framework.starter.discovery.register;
 
+import com.framework.starter.discovery.service.ServiceEntity;
+
 public interface Register {
 
     void register(String key,String endPoint);
 
+    void register(String key, ServiceEntity serviceEntity);
+
 }
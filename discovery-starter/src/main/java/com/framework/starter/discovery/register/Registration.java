@@ -1,6 +1,10 @@
 package com.framework.starter.discovery.register;
 
 import com.framework.starter.discovery.client.DiscoveryClient;
+import com.framework.starter.discovery.service.ServiceEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 功能概述
@@ -9,6 +13,7 @@ import com.framework.starter.discovery.client.DiscoveryClient;
  * author:         Gavin.Xu
  * date:           2021/6/13
  */
+@Slf4j
 public class Registration implements Register{
 
     private DiscoveryClient discoveryClient;
@@ -19,6 +24,19 @@ public class Registration implements Register{
 
     @Override
     public void register(String key, String endPoint) {
-        this.discoveryClient.addAndKeep(key,endPoint);
+        onRegistered(key, this.discoveryClient.addAndKeepAsync(key, endPoint));
+    }
+
+    @Override
+    public void register(String key, ServiceEntity serviceEntity) {
+        onRegistered(key, this.discoveryClient.addAndKeepAsync(key, serviceEntity));
+    }
+
+    private void onRegistered(String key, CompletableFuture<Void> registered) {
+        registered.whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                log.warn("register key:{} error, the client keeps retrying in the background", key, throwable);
+            }
+        });
     }
 }
@@ -0,0 +1,108 @@
+package com.framework.starter.discovery.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能概述    in-memory view of all the instances registered under one watched prefix,
+ * kept current by applying registry events instead of re-listing the prefix.
+ * className:      ServiceCache
+ * package:        com.framework.starter.discovery.service
+ * author:         Gavin.Xu
+ * date:           2021/7/2
+ */
+public class ServiceCache {
+
+    private final String prefix;
+    /**
+     * registry key -> instance registered on it
+     */
+    private final Map<String, ServiceEntity> entities = new ConcurrentHashMap<>();
+    /**
+     * immutable copy handed out to readers, rebuilt only when the content changes
+     */
+    private volatile Set<ServiceEntity> services = ImmutableSet.of();
+    /**
+     * registry revision the content is current up to, 0 if never listed
+     */
+    private volatile long revision;
+
+    public ServiceCache(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * replace the whole content, used for the initial listing and for re-listing
+     * @param entities registry key -> instance
+     * @return true if the cached content changed
+     */
+    public synchronized boolean reset(Map<String, ServiceEntity> entities) {
+        if (this.entities.equals(entities)) {
+            return false;
+        }
+        this.entities.clear();
+        this.entities.putAll(entities);
+        rebuild();
+        return true;
+    }
+
+    /**
+     * apply a put event
+     * @return true if the cached content changed
+     */
+    public synchronized boolean put(String key, ServiceEntity entity) {
+        ServiceEntity previous = this.entities.put(key, entity);
+        if (Objects.equals(previous, entity)) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * apply a delete event
+     * @return true if the cached content changed
+     */
+    public synchronized boolean remove(String key) {
+        if (this.entities.remove(key) == null) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * @return current instances, never null, must not be modified
+     */
+    public Set<ServiceEntity> getServices() {
+        return services;
+    }
+
+    /**
+     * @return copy of registry key -> instance
+     */
+    public synchronized Map<String, ServiceEntity> getEntities() {
+        return ImmutableMap.copyOf(this.entities);
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    private void rebuild() {
+        this.services = ImmutableSet.copyOf(this.entities.values());
+    }
+}
@@ -0,0 +1,105 @@
+package com.framework.starter.discovery.service;
+
+import com.framework.util.json.ObjectMapperUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 功能概述    encoding of the {@link ServiceEntity} values stored in the registry.
+ * binary layout: magic(byte) version(byte) port(unsigned short) lbWeight(int) host(short length + utf-8)
+ * env(short length + utf-8, length -1 if null). endPoint isn't stored, it's rebuilt from host and port.
+ * {@link #decode(byte[])} reads both encodings, so the writers can switch to binary once all the readers are upgraded.
+ * className:      ServiceEntityCodec
+ * package:        com.framework.starter.discovery.service
+ * author:         Gavin.Xu
+ * date:           2021/7/8
+ */
+public enum ServiceEntityCodec {
+    /**
+     * legacy json, readable by every reader version
+     */
+    JSON {
+        @Override
+        public byte[] encode(ServiceEntity serviceEntity) {
+            return ObjectMapperUtils.toJSON(serviceEntity).getBytes(StandardCharsets.UTF_8);
+        }
+    },
+    /**
+     * compact binary layout
+     */
+    BINARY {
+        @Override
+        public byte[] encode(ServiceEntity serviceEntity) {
+            byte[] host = serviceEntity.getHost().getBytes(StandardCharsets.UTF_8);
+            byte[] env = serviceEntity.getEnv() == null ? null : serviceEntity.getEnv().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(12 + host.length + (env == null ? 0 : env.length));
+            buffer.put(MAGIC)
+                    .put(VERSION)
+                    .putShort((short) serviceEntity.getPort())
+                    .putInt(serviceEntity.getLbWeight())
+                    .putShort((short) host.length)
+                    .put(host);
+            if (env == null) {
+                buffer.putShort((short) -1);
+            } else {
+                buffer.putShort((short) env.length).put(env);
+            }
+            return buffer.array();
+        }
+    };
+
+    /**
+     * can't be the first byte of a json object nor of any utf-8 text
+     */
+    private static final byte MAGIC = (byte) 0xAD;
+    private static final byte VERSION = 1;
+
+    public abstract byte[] encode(ServiceEntity serviceEntity);
+
+    /**
+     * @param bytes registry value, binary or legacy json
+     * @return the instance, host and port always filled
+     */
+    public static ServiceEntity decode(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == MAGIC) {
+            return decodeBinary(ByteBuffer.wrap(bytes));
+        }
+        ServiceEntity serviceEntity = ObjectMapperUtils.fromJSON(new String(bytes, StandardCharsets.UTF_8), ServiceEntity.class);
+        if (serviceEntity.getHost() == null) {
+            String[] hostPort = serviceEntity.getEndPoint().split(":");
+            serviceEntity.setHost(hostPort[0]);
+            serviceEntity.setPort(Integer.parseInt(hostPort[1]));
+        }
+        return serviceEntity;
+    }
+
+    private static ServiceEntity decodeBinary(ByteBuffer buffer) {
+        buffer.get();
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported service entity version " + version);
+        }
+        int port = buffer.getShort() & 0xFFFF;
+        int lbWeight = buffer.getInt();
+        String host = readString(buffer);
+        String env = readString(buffer);
+        return ServiceEntity.builder()
+                .endPoint(host + ":" + port)
+                .host(host)
+                .port(port)
+                .lbWeight(lbWeight)
+                .env(env)
+                .build();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,129 @@
+package com.framework.starter.discovery.snapshot;
+
+import com.framework.starter.discovery.service.ServiceEntity;
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+
+/**
+ * 功能概述    keeps the last good endpoints of every service key in a local file, one file per key.
+ * file layout: magic(int) version(short) revision(long) count(int) then per instance
+ * key(utf) host(utf) port(int) lbWeight(int) hasEnv(boolean) [env(utf)].
+ * files are written to a temp file and moved in place, so readers never see a partial file.
+ * className:      DiscoverySnapshotStore
+ * package:        com.framework.starter.discovery.snapshot
+ * author:         Gavin.Xu
+ * date:           2021/7/6
+ */
+@Slf4j
+public class DiscoverySnapshotStore {
+
+    private static final int MAGIC = 0xAD5A_0001;
+    private static final short VERSION = 1;
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+
+    public DiscoverySnapshotStore(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * @param key service key
+     * @return registry key -> instance of the last saved snapshot, empty if there is none or it can't be read
+     */
+    public Map<String, ServiceEntity> load(String key) {
+        Path file = fileOf(key);
+        if (!Files.isRegularFile(file)) {
+            return ImmutableMap.of();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("discovery snapshot {} has a bad magic, ignored", file);
+                return ImmutableMap.of();
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                log.warn("discovery snapshot {} has unsupported version {}, ignored", file, version);
+                return ImmutableMap.of();
+            }
+            long revision = in.readLong();
+            int count = in.readInt();
+            ImmutableMap.Builder<String, ServiceEntity> entities = ImmutableMap.builder();
+            for (int i = 0; i < count; i++) {
+                String instanceKey = in.readUTF();
+                String host = in.readUTF();
+                int port = in.readInt();
+                int lbWeight = in.readInt();
+                String env = in.readBoolean() ? in.readUTF() : null;
+                entities.put(instanceKey, ServiceEntity.builder()
+                        .endPoint(host + ":" + port)
+                        .host(host)
+                        .port(port)
+                        .lbWeight(lbWeight)
+                        .env(env)
+                        .build());
+            }
+            log.info("discovery snapshot loaded, key:{}, revision:{}, size:{}", key, revision, count);
+            return entities.build();
+        } catch (IOException | RuntimeException e) {
+            log.warn("discovery snapshot {} can't be read, ignored", file, e);
+            return ImmutableMap.of();
+        }
+    }
+
+    /**
+     * @param key      service key
+     * @param revision registry revision of the content
+     * @param entities registry key -> instance
+     */
+    public void save(String key, long revision, Map<String, ServiceEntity> entities) {
+        Path file = fileOf(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(this.directory);
+            tmp = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(revision);
+                out.writeInt(entities.size());
+                for (Map.Entry<String, ServiceEntity> entry : entities.entrySet()) {
+                    ServiceEntity entity = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entity.getHost());
+                    out.writeInt(entity.getPort());
+                    out.writeInt(entity.getLbWeight());
+                    out.writeBoolean(entity.getEnv() != null);
+                    if (entity.getEnv() != null) {
+                        out.writeUTF(entity.getEnv());
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("discovery snapshot saved, key:{}, revision:{}, size:{}", key, revision, entities.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("discovery snapshot {} can't be written", file, e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // nothing left to do
+                }
+            }
+        }
+    }
+
+    private Path fileOf(String key) {
+        try {
+            return this.directory.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8.name()) + SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
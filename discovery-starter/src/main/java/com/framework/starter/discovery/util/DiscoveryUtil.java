@@ -57,5 +57,14 @@ public class DiscoveryUtil {
                 .toString();
     }
 
+    /**
+     * every instance registers on its own key under the service key, so instances don't overwrite each other
+     * @param serviceKey eg:/services/event-server/v1.0/grpc/
+     * @param endPoint eg:127.0.0.1:9090
+     * @return eg:/services/event-server/v1.0/grpc/127.0.0.1:9090
+     */
+    public static String getInstanceKey(String serviceKey, String endPoint) {
+        return serviceKey + endPoint;
+    }
 
 }
@@ -0,0 +1,132 @@
+package com.framework.starter.discovery.client;
+
+import com.framework.starter.discovery.config.ZookeeperProperties;
+import com.framework.starter.discovery.event.RegisterEvent;
+import com.framework.starter.discovery.service.ServiceEntity;
+import com.framework.starter.discovery.util.DiscoveryUtil;
+import org.apache.curator.test.KillSession;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 功能概述    registers, watches and recovers against an embedded zookeeper
+ * className:      ZookeeperDiscoveryClientTest
+ * package:        com.framework.starter.discovery.client
+ * author:         Gavin.Xu
+ * date:           2021/7/29
+ */
+class ZookeeperDiscoveryClientTest {
+
+    private static final String SERVICE_KEY = DiscoveryUtil.getKey("/services", "event-server", "v1.0", "grpc");
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private TestingServer server;
+    private ZookeeperDiscoveryClient client;
+    private ApplicationContext context;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.server = new TestingServer(true);
+        ZookeeperProperties properties = new ZookeeperProperties();
+        properties.setConnectString(this.server.getConnectString());
+        properties.setSessionTimeout(Duration.ofSeconds(10));
+        properties.setConnectionTimeout(Duration.ofSeconds(5));
+        properties.setBaseSleepTime(Duration.ofMillis(100));
+        this.client = new ZookeeperDiscoveryClient(properties);
+        this.context = mock(ApplicationContext.class);
+        this.client.setApplicationContext(this.context);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        this.client.close();
+        this.server.close();
+    }
+
+    @Test
+    void registeredInstanceIsFoundWithoutWatch() {
+        this.client.addAndKeep(instanceKey("127.0.0.1:9090"), instance("127.0.0.1", 9090));
+
+        assertThat(this.client.findServices(SERVICE_KEY)).extracting(ServiceEntity::getEndPoint)
+                .containsExactly("127.0.0.1:9090");
+    }
+
+    @Test
+    void addAndKeepAsyncCompletesOnceTheNodeIsCreated() throws Exception {
+        this.client.addAndKeepAsync(instanceKey("127.0.0.1:9090"), instance("127.0.0.1", 9090))
+                .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertThat(this.client.findServices(SERVICE_KEY)).hasSize(1);
+    }
+
+    @Test
+    void watchedKeyIsServedOnceInitializedAndFollowsChanges() {
+        this.client.addAndKeep(instanceKey("127.0.0.1:9090"), instance("127.0.0.1", 9090));
+
+        this.client.watch(SERVICE_KEY);
+        assertThat(this.client.findServices(SERVICE_KEY)).hasSize(1);
+
+        this.client.addAndKeep(instanceKey("127.0.0.1:9091"), instance("127.0.0.1", 9091));
+        await(() -> this.client.findServices(SERVICE_KEY).size() == 2);
+        verify(this.context, atLeastOnce()).publishEvent(any(RegisterEvent.class));
+    }
+
+    @Test
+    void registrationAndWatchRecoverAfterSessionExpiry() throws Exception {
+        this.client.addAndKeep(instanceKey("127.0.0.1:9090"), instance("127.0.0.1", 9090));
+        this.client.watch(SERVICE_KEY);
+        assertThat(this.client.findServices(SERVICE_KEY)).hasSize(1);
+
+        KillSession.kill(this.client.getClient().getZookeeperClient().getZooKeeper());
+
+        // the ephemeral node is recreated on the new session and the tree cache catches up with it
+        await(() -> this.client.getClient().getZookeeperClient().isConnected()
+                && this.client.getRegistrations().get(instanceKey("127.0.0.1:9090")).getActualPath() != null);
+        await(() -> {
+            Set<ServiceEntity> services = this.client.findServices(SERVICE_KEY);
+            return services.size() == 1 && services.iterator().next().getPort() == 9090;
+        });
+        this.client.addAndKeep(instanceKey("127.0.0.1:9091"), instance("127.0.0.1", 9091));
+        await(() -> this.client.findServices(SERVICE_KEY).size() == 2);
+    }
+
+    private static String instanceKey(String endPoint) {
+        return DiscoveryUtil.getInstanceKey(SERVICE_KEY, endPoint);
+    }
+
+    private static ServiceEntity instance(String host, int port) {
+        ServiceEntity serviceEntity = new ServiceEntity();
+        serviceEntity.setHost(host);
+        serviceEntity.setPort(port);
+        serviceEntity.setEndPoint(host + ":" + port);
+        serviceEntity.setLbWeight(10);
+        return serviceEntity;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
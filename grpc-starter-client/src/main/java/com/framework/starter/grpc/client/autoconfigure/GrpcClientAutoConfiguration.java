@@ -6,14 +6,25 @@ import com.framework.starter.discovery.client.EtcdDiscoveryClient;
 import com.framework.starter.discovery.client.ZookeeperDiscoveryClient;
 import com.framework.starter.discovery.util.DiscoveryUtil;
 import com.framework.starter.grpc.client.channelfactory.GrpcChannelFactory;
+import com.framework.starter.grpc.client.channelfactory.GrpcChannelWarmUp;
 import com.framework.starter.grpc.client.channelfactory.NettyChannelFactory;
 import com.framework.starter.grpc.client.config.GrpcClientProperties;
 import com.framework.starter.grpc.client.inject.GrpcClientBeanPostProcessor;
 import com.framework.starter.grpc.client.interceptor.AnnotationGlobalClientInterceptorConfigurer;
+import com.framework.starter.grpc.client.interceptor.ConcurrencyLimitClientInterceptor;
 import com.framework.starter.grpc.client.interceptor.GlobalClientInterceptorRegistry;
 import com.framework.starter.grpc.client.interceptor.GrpcTimeoutClientInterceptor;
+import com.framework.starter.grpc.client.interceptor.ResponseCacheClientInterceptor;
+import com.framework.starter.grpc.client.loadbalancer.LeastRequestLoadBalancerProvider;
+import com.framework.starter.grpc.client.loadbalancer.LoadBalancerRegistration;
+import com.framework.starter.grpc.client.loadbalancer.PeakEwmaLoadBalancerProvider;
+import com.framework.starter.grpc.client.loadbalancer.RingHashLoadBalancerProvider;
+import com.framework.starter.grpc.client.loadbalancer.ServiceKeyRoutingLoadBalancerProvider;
+import com.framework.starter.grpc.client.loadbalancer.WeightedRoundRobinLoadBalancerProvider;
 import com.framework.starter.grpc.client.nameresolver.DiscoveryNameResolverProvider;
 import com.framework.starter.grpc.client.nameresolver.NameResolverRegistration;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.LoadBalancerRegistry;
 import io.grpc.NameResolverProvider;
 import io.grpc.NameResolverRegistry;
 import lombok.NonNull;
@@ -27,6 +38,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Lazy;
 
 import java.util.List;
@@ -75,11 +87,28 @@ public class GrpcClientAutoConfiguration {
         return new AnnotationGlobalClientInterceptorConfigurer(applicationContext);
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "grpc.client.concurrency-limit-enable", havingValue = "true")
+    ConcurrencyLimitClientInterceptor concurrencyLimitClientInterceptor(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "ConcurrencyLimitClientInterceptor");
+        return new ConcurrencyLimitClientInterceptor(grpcClientProperties);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "grpc.client.response-cache-enable", havingValue = "true")
+    ResponseCacheClientInterceptor responseCacheClientInterceptor(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "ResponseCacheClientInterceptor");
+        return new ResponseCacheClientInterceptor(grpcClientProperties);
+    }
+
     @Bean
     @ConditionalOnBean(DiscoveryClient.class)
-    NameResolverProvider nameResolverProvider(final DiscoveryClient discoveryClient) {
+    DiscoveryNameResolverProvider nameResolverProvider(final DiscoveryClient discoveryClient,
+                                              final GrpcClientProperties grpcClientProperties) {
         log.debug("try to create bean {}", "NameResolverProvider");
-        return new DiscoveryNameResolverProvider(discoveryClient);
+        return new DiscoveryNameResolverProvider(discoveryClient, grpcClientProperties);
     }
 
     @Bean
@@ -91,12 +120,62 @@ public class GrpcClientAutoConfiguration {
         return nameResolverRegistration;
     }
 
+    @Bean
+    LoadBalancerProvider weightedRoundRobinLoadBalancerProvider(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "WeightedRoundRobinLoadBalancerProvider");
+        return new WeightedRoundRobinLoadBalancerProvider(grpcClientProperties);
+    }
+
+    @Bean
+    LoadBalancerProvider leastRequestLoadBalancerProvider(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "LeastRequestLoadBalancerProvider");
+        return new LeastRequestLoadBalancerProvider(grpcClientProperties);
+    }
+
+    @Bean
+    LoadBalancerProvider peakEwmaLoadBalancerProvider(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "PeakEwmaLoadBalancerProvider");
+        return new PeakEwmaLoadBalancerProvider(grpcClientProperties);
+    }
+
+    @Bean
+    LoadBalancerProvider ringHashLoadBalancerProvider(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "RingHashLoadBalancerProvider");
+        return new RingHashLoadBalancerProvider(grpcClientProperties);
+    }
+
+    @Bean
+    LoadBalancerProvider serviceKeyRoutingLoadBalancerProvider(final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "ServiceKeyRoutingLoadBalancerProvider");
+        return new ServiceKeyRoutingLoadBalancerProvider(grpcClientProperties);
+    }
 
     @Bean
     @ConditionalOnMissingBean
-    GrpcChannelFactory grpcChannelFactory(final GrpcClientProperties grpcClientProperties, final GlobalClientInterceptorRegistry globalClientInterceptorRegistry) {
+    LoadBalancerRegistration loadBalancerRegistration(@Autowired(required = false) final List<LoadBalancerProvider> loadBalancerProviders) {
+        log.debug("try to create bean {}", "LoadBalancerRegistration");
+        final LoadBalancerRegistration loadBalancerRegistration = new LoadBalancerRegistration(loadBalancerProviders);
+        loadBalancerRegistration.register(LoadBalancerRegistry.getDefaultRegistry());
+        return loadBalancerRegistration;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @DependsOn("loadBalancerRegistration")
+    GrpcChannelFactory grpcChannelFactory(final GrpcClientProperties grpcClientProperties, final GlobalClientInterceptorRegistry globalClientInterceptorRegistry,
+                                          @Autowired(required = false) final DiscoveryNameResolverProvider nameResolverProvider) {
         log.debug("try to create bean {}", "GrpcChannelFactory");
-        return new NettyChannelFactory(grpcClientProperties, globalClientInterceptorRegistry);
+        final NettyChannelFactory channelFactory = new NettyChannelFactory(grpcClientProperties, globalClientInterceptorRegistry);
+        channelFactory.setNameResolverProvider(nameResolverProvider);
+        return channelFactory;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    GrpcChannelWarmUp grpcChannelWarmUp(final GrpcChannelFactory grpcChannelFactory,
+                                        final GrpcClientProperties grpcClientProperties) {
+        log.debug("try to create bean {}", "GrpcChannelWarmUp");
+        return new GrpcChannelWarmUp(grpcChannelFactory, grpcClientProperties);
     }
 
 }
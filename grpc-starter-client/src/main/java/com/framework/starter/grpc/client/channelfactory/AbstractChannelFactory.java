@@ -4,12 +4,16 @@ import com.framework.starter.discovery.enums.Protocol;
 import com.framework.starter.discovery.util.DiscoveryUtil;
 import com.framework.starter.grpc.client.config.GrpcClientProperties;
 import com.framework.starter.grpc.client.interceptor.GlobalClientInterceptorRegistry;
+import com.framework.starter.grpc.client.loadbalancer.ServiceKeyRoutingLoadBalancer;
+import com.framework.starter.grpc.client.loadbalancer.ServiceKeyRoutingLoadBalancerProvider;
+import com.framework.starter.grpc.client.nameresolver.DiscoveryNameResolverProvider;
 import com.google.common.collect.Lists;
 import io.grpc.*;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.concurrent.GuardedBy;
 import java.sql.Time;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -32,12 +36,15 @@ public abstract class AbstractChannelFactory<T extends ManagedChannelBuilder<T>>
     private boolean shutdown = false;
     private GrpcClientProperties properties;
     private GlobalClientInterceptorRegistry globalClientInterceptorRegistry;
+    /**
+     * resolver provider of the shared channel, null if the service keys can't share it
+     */
+    private DiscoveryNameResolverProvider nameResolverProvider;
 
     /**
      * 50M
      */
     private static final int MAX_INBOUND_MESSAGE_SIZE = 50 * 1024 * 1024;
-    private static final String DEFAULT_LOAD_BALANCE_POLICY = "weighted_round_robin";
     private static final String SERVICE_PREFIX = DiscoveryUtil.SERVICE_PREFIX;
 
 
@@ -52,23 +59,56 @@ public abstract class AbstractChannelFactory<T extends ManagedChannelBuilder<T>>
     @Override
     public Channel createChannel(String name, String version) {
         final Channel channel;
+        final String serviceKey;
         synchronized (this) {
             if (this.shutdown) {
                 throw new IllegalStateException("GrpcChannelFactory is already closed!");
             }
-            String serviceKey = String.valueOf(DiscoveryUtil.getKey(SERVICE_PREFIX, name, version, Protocol.GRPC.of()));
-            channel = this.channels.computeIfAbsent(serviceKey, this::newManagedChannel);
+            serviceKey = String.valueOf(DiscoveryUtil.getKey(SERVICE_PREFIX, name, version, Protocol.GRPC.of()));
+            if (isSharing()) {
+                this.nameResolverProvider.share(serviceKey);
+                channel = this.channels.computeIfAbsent(DiscoveryNameResolverProvider.SHARED_TARGET, this::newManagedChannel);
+            } else {
+                channel = this.channels.computeIfAbsent(serviceKey, this::newManagedChannel);
+            }
         }
         final List<ClientInterceptor> interceptors =
                 Lists.newArrayList(this.globalClientInterceptorRegistry.getClientInterceptors());
+        if (isSharing()) {
+            // first, so the global interceptors see the service key and the authority like on a channel of its own
+            interceptors.add(0, new ServiceKeyInterceptor(serviceKey));
+        }
         return ClientInterceptors.interceptForward(channel, interceptors);
     }
 
+    private boolean isSharing() {
+        return this.properties.isShareTransports() && this.nameResolverProvider != null;
+    }
+
+    /**
+     * Sets the resolver provider, required to call the service keys over the shared channel when
+     * {@link GrpcClientProperties#isShareTransports()} is enabled.
+     *
+     * @param nameResolverProvider The provider resolving the shared channel.
+     */
+    public void setNameResolverProvider(final DiscoveryNameResolverProvider nameResolverProvider) {
+        this.nameResolverProvider = nameResolverProvider;
+    }
+
+    @Override
+    public Map<String, ManagedChannel> getChannels() {
+        return Collections.unmodifiableMap(this.channels);
+    }
+
     protected abstract T newChannelBuilder(String name);
 
     protected ManagedChannel newManagedChannel(final String name) {
         final T builder = newChannelBuilder(name);
         configure(builder);
+        if (DiscoveryNameResolverProvider.SHARED_TARGET.equals(name)) {
+            // the keys are balanced by the configured policy inside the routing one
+            builder.defaultLoadBalancingPolicy(ServiceKeyRoutingLoadBalancerProvider.POLICY_NAME);
+        }
         return builder.build();
     }
 
@@ -96,6 +136,17 @@ public abstract class AbstractChannelFactory<T extends ManagedChannelBuilder<T>>
          * load balance
          */
         builder.defaultLoadBalancingPolicy(properties.getDefaultLoadBalancingPolicy());
+
+        /**
+         * retry & hedging
+         */
+        final Map<String, Object> serviceConfig = RetryServiceConfig.of(properties);
+        if (serviceConfig != null) {
+            builder.defaultServiceConfig(serviceConfig);
+            // the discovery resolvers carry no service config, the default one is always used
+            builder.disableServiceConfigLookUp();
+            builder.enableRetry();
+        }
         builder.usePlaintext();
     }
 
@@ -132,4 +183,25 @@ public abstract class AbstractChannelFactory<T extends ManagedChannelBuilder<T>>
         this.channels.clear();
         log.debug("GrpcCannelFactory closed (including {} channels)", channelCount);
     }
+
+    /**
+     * tags the calls with the service key they are routed by in the shared channel, and keeps the authority the
+     * channel of their own would have sent
+     */
+    private static final class ServiceKeyInterceptor implements ClientInterceptor {
+
+        private final String serviceKey;
+
+        ServiceKeyInterceptor(String serviceKey) {
+            this.serviceKey = serviceKey;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                   CallOptions callOptions, Channel next) {
+            return next.newCall(method, callOptions
+                    .withOption(ServiceKeyRoutingLoadBalancer.SERVICE_KEY, this.serviceKey)
+                    .withAuthority(this.serviceKey));
+        }
+    }
 }
@@ -22,6 +22,9 @@ import io.grpc.Channel;
 import io.grpc.ClientInterceptor;
 import io.grpc.ManagedChannel;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * This factory creates grpc {@link Channel}s for a given service name. Implementations are encouraged to utilize
  * connection pooling and thus {@link #close() close} should be called before disposing it.
@@ -45,6 +48,15 @@ public interface GrpcChannelFactory extends AutoCloseable {
      */
     Channel createChannel(final String name, final String version);
 
+    /**
+     * Gets the channels created so far, by their target.
+     *
+     * @return The channels created so far, empty if the implementation doesn't expose them.
+     */
+    default Map<String, ManagedChannel> getChannels() {
+        return Collections.emptyMap();
+    }
+
 
     @Override
     void close();
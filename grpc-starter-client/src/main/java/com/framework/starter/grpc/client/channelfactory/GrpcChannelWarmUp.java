@@ -0,0 +1,115 @@
+package com.framework.starter.grpc.client.channelfactory;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * 功能概述    connects the channels created while the context was refreshed before the application is started, so the
+ * first calls don't pay the resolution and the connection latency. it waits at most for
+ * {@link GrpcClientProperties#getWarmUpTimeout()} and reports the channels that aren't ready by then, they keep
+ * connecting in the background. started before the servers, only if {@link GrpcClientProperties#isWarmUpEnable()}.
+ * className:      GrpcChannelWarmUp
+ * package:        com.framework.starter.grpc.client.channelfactory
+ * author:         Gavin.Xu
+ * date:           2021/7/21
+ */
+@Slf4j
+public class GrpcChannelWarmUp implements SmartLifecycle {
+
+    private final GrpcChannelFactory channelFactory;
+    private final GrpcClientProperties properties;
+    private volatile boolean running;
+
+    public GrpcChannelWarmUp(final GrpcChannelFactory channelFactory, final GrpcClientProperties properties) {
+        this.channelFactory = requireNonNull(channelFactory, "channelFactory");
+        this.properties = requireNonNull(properties, "properties");
+    }
+
+    @Override
+    public void start() {
+        this.running = true;
+        final Map<String, ManagedChannel> channels = this.channelFactory.getChannels();
+        if (channels.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final CountDownLatch latch = new CountDownLatch(channels.size());
+        final AtomicBoolean done = new AtomicBoolean();
+        channels.values().forEach(channel -> awaitReady(channel, latch, done));
+        try {
+            latch.await(this.properties.getWarmUpTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.set(true);
+        }
+        report(channels, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * asks the channel to connect and counts it down once ready, or shut down
+     */
+    private static void awaitReady(ManagedChannel channel, CountDownLatch latch, AtomicBoolean done) {
+        final ConnectivityState state = channel.getState(true);
+        if (state == ConnectivityState.READY || state == ConnectivityState.SHUTDOWN) {
+            latch.countDown();
+            return;
+        }
+        channel.notifyWhenStateChanged(state, () -> {
+            if (!done.get()) {
+                awaitReady(channel, latch, done);
+            }
+        });
+    }
+
+    private static void report(Map<String, ManagedChannel> channels, long elapsedMillis) {
+        int ready = 0;
+        for (Map.Entry<String, ManagedChannel> channel : channels.entrySet()) {
+            final ConnectivityState state = channel.getValue().getState(false);
+            if (state == ConnectivityState.READY) {
+                ready++;
+                log.info("gRPC channel {} warmed up", channel.getKey());
+            } else {
+                log.warn("gRPC channel {} not ready after warm up, state {}", channel.getKey(), state);
+            }
+        }
+        log.info("gRPC channels warm up finished in {}ms, {} of {} ready", elapsedMillis, ready, channels.size());
+    }
+
+    @Override
+    public void stop() {
+        this.running = false;
+    }
+
+    @Override
+    public void stop(final Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    @Override
+    public int getPhase() {
+        // before the grpc and the web servers take traffic
+        return Integer.MAX_VALUE - 2;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return this.properties.isWarmUpEnable();
+    }
+}
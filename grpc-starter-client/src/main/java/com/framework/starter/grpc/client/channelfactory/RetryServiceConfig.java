@@ -0,0 +1,105 @@
+package com.framework.starter.grpc.client.channelfactory;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import com.framework.starter.grpc.client.config.HedgingPolicyProperties;
+import com.framework.starter.grpc.client.config.RetryPolicyProperties;
+import com.google.common.collect.Lists;
+import io.grpc.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 功能概述    turns the retry and hedging policies of {@link GrpcClientProperties} into the gRPC service config the
+ * channels start with. the service config is parsed like json, so the numbers are doubles and the durations are
+ * strings of seconds.
+ * className:      RetryServiceConfig
+ * package:        com.framework.starter.grpc.client.channelfactory
+ * author:         Gavin.Xu
+ * date:           2021/7/22
+ */
+@Slf4j
+final class RetryServiceConfig {
+
+    private RetryServiceConfig() {
+    }
+
+    /**
+     * @return the service config, null if no policy is configured
+     */
+    static Map<String, Object> of(GrpcClientProperties properties) {
+        if (properties.getRetry().isEmpty() && properties.getHedging().isEmpty()) {
+            return null;
+        }
+        List<Map<String, Object>> methodConfigs = Lists.newArrayList();
+        properties.getRetry().forEach((name, policy) -> {
+            if (properties.getHedging().containsKey(name)) {
+                throw new IllegalArgumentException("grpc.client " + name + " can't have both a retry and a hedging policy");
+            }
+            methodConfigs.add(methodConfig(name, "retryPolicy", retryPolicy(policy)));
+        });
+        properties.getHedging().forEach((name, policy) ->
+                methodConfigs.add(methodConfig(name, "hedgingPolicy", hedgingPolicy(policy))));
+
+        Map<String, Object> retryThrottling = new LinkedHashMap<>();
+        retryThrottling.put("maxTokens", (double) properties.getRetryThrottlingMaxTokens());
+        retryThrottling.put("tokenRatio", properties.getRetryThrottlingTokenRatio());
+
+        Map<String, Object> serviceConfig = new LinkedHashMap<>();
+        serviceConfig.put("methodConfig", methodConfigs);
+        serviceConfig.put("retryThrottling", retryThrottling);
+        return serviceConfig;
+    }
+
+    /**
+     * @param name full service name, or full method name as service/method
+     */
+    private static Map<String, Object> methodConfig(String name, String policyName, Map<String, Object> policy) {
+        if (name.indexOf('.') < 0) {
+            log.warn("grpc.client {} of {} isn't a full service or method name, is it configured without the brackets?",
+                    policyName, name);
+        }
+        Map<String, Object> methodName = new LinkedHashMap<>();
+        int slash = name.indexOf('/');
+        if (slash < 0) {
+            methodName.put("service", name);
+        } else {
+            methodName.put("service", name.substring(0, slash));
+            methodName.put("method", name.substring(slash + 1));
+        }
+        Map<String, Object> methodConfig = new LinkedHashMap<>();
+        methodConfig.put("name", Lists.newArrayList(methodName));
+        methodConfig.put(policyName, policy);
+        return methodConfig;
+    }
+
+    private static Map<String, Object> retryPolicy(RetryPolicyProperties policy) {
+        Map<String, Object> retryPolicy = new LinkedHashMap<>();
+        retryPolicy.put("maxAttempts", (double) policy.getMaxAttempts());
+        retryPolicy.put("initialBackoff", duration(policy.getInitialBackoff()));
+        retryPolicy.put("maxBackoff", duration(policy.getMaxBackoff()));
+        retryPolicy.put("backoffMultiplier", policy.getBackoffMultiplier());
+        retryPolicy.put("retryableStatusCodes", codes(policy.getRetryableStatusCodes()));
+        return retryPolicy;
+    }
+
+    private static Map<String, Object> hedgingPolicy(HedgingPolicyProperties policy) {
+        Map<String, Object> hedgingPolicy = new LinkedHashMap<>();
+        hedgingPolicy.put("maxAttempts", (double) policy.getMaxAttempts());
+        hedgingPolicy.put("hedgingDelay", duration(policy.getHedgingDelay()));
+        hedgingPolicy.put("nonFatalStatusCodes", codes(policy.getNonFatalStatusCodes()));
+        return hedgingPolicy;
+    }
+
+    private static String duration(Duration duration) {
+        return String.format("%d.%09ds", duration.getSeconds(), duration.getNano());
+    }
+
+    private static List<String> codes(List<Status.Code> codes) {
+        return codes.stream().map(Status.Code::name).collect(Collectors.toList());
+    }
+}
@@ -19,6 +19,8 @@ package com.framework.starter.grpc.client.config;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -30,6 +32,8 @@ import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
+import com.framework.starter.discovery.util.DiscoveryUtil;
+
 /**
  * The channel properties for a single named gRPC channel or service reference.
  *
@@ -58,12 +62,178 @@ public class GrpcClientProperties {
     public void setTimeout(Duration timeout) {
         this.timeout = timeout;
     }
+
+    private Map<String, Duration> timeouts = new LinkedHashMap<>();
+
+    /**
+     * Gets the client timeouts by service or method name.
+     *
+     * @return The timeouts by service or method name.
+     * @see #setTimeouts(Map)
+     */
+    public Map<String, Duration> getTimeouts() {
+        return this.timeouts;
+    }
+
+    /**
+     * Sets the client timeouts by service or method name. A name is either the full service name, like
+     * {@code com.example.AdService}, or the full method name, like {@code com.example.AdService/Bid}, the timeout of
+     * a method overrides the one of its service, which overrides {@link #getTimeout() the timeout}. Defaults to none.
+     *
+     * <p>
+     * The name must be bracketed to be bound as is, like {@code grpc.client.timeouts[com.example.AdService/Bid]=100ms},
+     * or the key {@code "[com.example.AdService/Bid]"} in yaml. Without the brackets the binder drops the slash, and
+     * the timeout never matches.
+     * </p>
+     *
+     * @param timeouts The timeouts by service or method name.
+     */
+    public void setTimeouts(final Map<String, Duration> timeouts) {
+        this.timeouts = timeouts == null ? new LinkedHashMap<>() : timeouts;
+    }
+
+    @DurationUnit(ChronoUnit.MILLIS)
+    private Duration deadlineReserve;
+    private static final Duration DEFAULT_DEADLINE_RESERVE = Duration.of(10, ChronoUnit.MILLIS);
+
+    /**
+     * Gets the time kept from the deadline of the inbound call for the way back to its caller.
+     *
+     * @return The deadline reserve.
+     * @see #setDeadlineReserve(Duration)
+     */
+    public Duration getDeadlineReserve() {
+        return this.deadlineReserve == null ? DEFAULT_DEADLINE_RESERVE : this.deadlineReserve;
+    }
+
+    /**
+     * Sets the time kept from the deadline of the inbound call for the way back to its caller. A call made while
+     * serving a call with a deadline ends that long before it, so the answer still reaches the caller in time.
+     * Defaults to {@code 10ms}. Default unit {@link ChronoUnit#MILLIS MILLIS}.
+     *
+     * @param deadlineReserve The new deadline reserve, or null to use the fallback.
+     */
+    public void setDeadlineReserve(final Duration deadlineReserve) {
+        this.deadlineReserve = deadlineReserve;
+    }
+    // --------------------------------------------------
+    // resolveWindow
+    // --------------------------------------------------
+
+    @DurationUnit(ChronoUnit.MILLIS)
+    private Duration resolveWindow;
+    private static final Duration DEFAULT_RESOLVE_WINDOW = Duration.of(100, ChronoUnit.MILLIS);
+
+    /**
+     * Gets the window in which the discovery changes of one service are merged into a single address update.
+     *
+     * @return The resolve window.
+     * @see #setResolveWindow(Duration)
+     */
+    public Duration getResolveWindow() {
+        return this.resolveWindow == null ? DEFAULT_RESOLVE_WINDOW : this.resolveWindow;
+    }
+
+    /**
+     * Sets the window in which the discovery changes of one service are merged into a single address update. The
+     * first change of a service starts the window, all the changes arriving before it ends are applied together.
+     * Defaults to {@code 100ms}. Default unit {@link ChronoUnit#MILLIS MILLIS}. {@code 0} applies every change
+     * immediately.
+     *
+     * @param resolveWindow The new resolve window, or null to use the fallback.
+     */
+    public void setResolveWindow(final Duration resolveWindow) {
+        this.resolveWindow = resolveWindow;
+    }
+
+    // --------------------------------------------------
+    // resolveTimeout
+    // --------------------------------------------------
+
+    @DurationUnit(ChronoUnit.MILLIS)
+    private Duration resolveTimeout;
+    private static final Duration DEFAULT_RESOLVE_TIMEOUT = Duration.of(3000, ChronoUnit.MILLIS);
+
+    /**
+     * Gets how long the first resolution of a channel waits for the watch of its services.
+     *
+     * @return The resolve timeout.
+     * @see #setResolveTimeout(Duration)
+     */
+    public Duration getResolveTimeout() {
+        return this.resolveTimeout == null ? DEFAULT_RESOLVE_TIMEOUT : this.resolveTimeout;
+    }
+
+    /**
+     * Sets how long the first resolution of a channel waits for the watch of its services. Past it the services are
+     * looked up without the watch, or the channel is told they are unavailable, while the watch keeps retrying in the
+     * background. Defaults to {@code 3000ms}. Default unit {@link ChronoUnit#MILLIS MILLIS}.
+     *
+     * @param resolveTimeout The new resolve timeout, or null to use the fallback.
+     */
+    public void setResolveTimeout(final Duration resolveTimeout) {
+        this.resolveTimeout = resolveTimeout;
+    }
+
+    // --------------------------------------------------
+    // subsetting
+    // --------------------------------------------------
+
+    private Integer subsetSize;
+    private static final int DEFAULT_SUBSET_SIZE = 0;
+
+    /**
+     * Gets the max number of endpoints of one service this client connects to.
+     *
+     * @return The subset size, 0 if subsetting is disabled.
+     * @see #setSubsetSize(Integer)
+     */
+    public int getSubsetSize() {
+        return this.subsetSize == null ? DEFAULT_SUBSET_SIZE : this.subsetSize;
+    }
+
+    /**
+     * Sets the max number of endpoints of one service this client connects to. Each client picks its endpoints by
+     * rendezvous hashing of its {@link #getSubsetClientId() client id}, so the subset is stable across restarts, the
+     * clients spread evenly over the endpoints, and a joining or leaving endpoint changes at most one member of a
+     * subset. Defaults to {@code 0}, which connects to every endpoint.
+     *
+     * @param subsetSize The new subset size, or null to use the fallback.
+     */
+    public void setSubsetSize(final Integer subsetSize) {
+        this.subsetSize = subsetSize;
+    }
+
+    // --------------------------------------------------
+
+    private String subsetClientId;
+
+    /**
+     * Gets the id that selects the subset of this client.
+     *
+     * @return The client id.
+     * @see #setSubsetClientId(String)
+     */
+    public String getSubsetClientId() {
+        return this.subsetClientId == null ? DiscoveryUtil.getHostIp() : this.subsetClientId;
+    }
+
+    /**
+     * Sets the id that selects the subset of this client, it should be unique and stable per client instance.
+     * Defaults to the host ip.
+     *
+     * @param subsetClientId The new client id, or null to use the fallback.
+     */
+    public void setSubsetClientId(final String subsetClientId) {
+        this.subsetClientId = subsetClientId;
+    }
+
     // --------------------------------------------------
     // defaultLoadBalancingPolicy
     // --------------------------------------------------
 
     private String defaultLoadBalancingPolicy;
-    private static final String DEFAULT_DEFAULT_LOAD_BALANCING_POLICY = "round_robin";
+    private static final String DEFAULT_DEFAULT_LOAD_BALANCING_POLICY = "weighted_round_robin";
 
     /**
      * Gets the default load balancing policy this channel should use.
@@ -79,8 +249,9 @@ public class GrpcClientProperties {
     /**
      * Sets the default load balancing policy for this channel. This config might be overwritten by the service config
      * received from the target address. The names have to be resolvable from the {@link LoadBalancerRegistry}. By
-     * default this the {@code round_robin} policy. Please note that this policy is different from the normal grpc-java
-     * default policy {@code pick_first}.
+     * default this the {@code weighted_round_robin} policy, which balances over every resolved endpoint by its
+     * discovery weight. Please note that this policy is different from the normal grpc-java default policy
+     * {@code pick_first}.
      *
      * @param defaultLoadBalancingPolicy The default load balancing policy to use or null to use the fallback.
      */
@@ -88,6 +259,736 @@ public class GrpcClientProperties {
         this.defaultLoadBalancingPolicy = defaultLoadBalancingPolicy;
     }
 
+    // --------------------------------------------------
+    // connectionsPerTarget
+    // --------------------------------------------------
+
+    private Integer connectionsPerTarget;
+    private static final int DEFAULT_CONNECTIONS_PER_TARGET = 1;
+
+    /**
+     * Gets the number of connections opened to every endpoint.
+     *
+     * @return The connections per endpoint.
+     * @see #setConnectionsPerTarget(Integer)
+     */
+    public int getConnectionsPerTarget() {
+        return this.connectionsPerTarget == null ? DEFAULT_CONNECTIONS_PER_TARGET : this.connectionsPerTarget;
+    }
+
+    /**
+     * Sets the number of connections opened to every endpoint. The load balancers spread the calls over all of
+     * them, so the calls to one endpoint aren't capped by the max concurrent streams of a single HTTP/2 connection
+     * and are served by several event loops. Defaults to {@code 1}.
+     *
+     * @param connectionsPerTarget The new connections per endpoint, or null to use the fallback.
+     */
+    public void setConnectionsPerTarget(final Integer connectionsPerTarget) {
+        this.connectionsPerTarget = connectionsPerTarget;
+    }
+
+    // --------------------------------------------------
+    // shareTransports
+    // --------------------------------------------------
+
+    private Boolean shareTransports;
+    private static final boolean DEFAULT_SHARE_TRANSPORTS = false;
+
+    /**
+     * Gets whether all the service keys are called over one channel sharing the connections per endpoint.
+     *
+     * @return True, if the connections are shared across the service keys.
+     * @see #setShareTransports(Boolean)
+     */
+    public boolean isShareTransports() {
+        return this.shareTransports == null ? DEFAULT_SHARE_TRANSPORTS : this.shareTransports;
+    }
+
+    /**
+     * Sets whether all the service keys are called over one channel sharing the connections per endpoint. When
+     * enabled, the service keys that resolve to the same host:port are multiplexed over the same connections instead
+     * of opening a channel and connections of their own, each key is still balanced by the
+     * {@link #getDefaultLoadBalancingPolicy() default load balancing policy} over its own endpoints. Defaults to
+     * {@code false}.
+     *
+     * @param shareTransports Whether to share the connections, or null to use the fallback.
+     */
+    public void setShareTransports(final Boolean shareTransports) {
+        this.shareTransports = shareTransports;
+    }
+
+    // --------------------------------------------------
+    // locality
+    // --------------------------------------------------
+
+    private Boolean localityAware;
+    private static final boolean DEFAULT_LOCALITY_AWARE = false;
+
+    /**
+     * Gets whether the load balancers prefer the endpoints registered with the env of this client.
+     *
+     * @return True, if the local endpoints are preferred. False otherwise.
+     * @see #setLocalityAware(Boolean)
+     */
+    public boolean isLocalityAware() {
+        return this.localityAware == null ? DEFAULT_LOCALITY_AWARE : this.localityAware;
+    }
+
+    /**
+     * Sets whether the load balancers prefer the endpoints registered with the env of this client. Has no effect
+     * if this client has no env or no endpoint shares it. Enabling it changes how the calls spread over the
+     * endpoints of a service registered in several envs. The env is the only locality the registrations carry, there
+     * is no zone affinity. Defaults to {@code false}.
+     *
+     * @param localityAware Whether the local endpoints are preferred, or null to use the fallback.
+     * @see #setLocalityMinHealthyFraction(Double)
+     */
+    public void setLocalityAware(final Boolean localityAware) {
+        this.localityAware = localityAware;
+    }
+
+    // --------------------------------------------------
+
+    private String localityEnv;
+
+    /**
+     * Gets the env of this client.
+     *
+     * @return The env of this client, or null if it has none.
+     * @see #setLocalityEnv(String)
+     */
+    public String getLocalityEnv() {
+        return this.localityEnv == null ? System.getProperty("env") : this.localityEnv;
+    }
+
+    /**
+     * Sets the env of this client, compared with the env the servers registered with. Defaults to the {@code env}
+     * system property, the one the servers register with.
+     *
+     * @param localityEnv The env of this client, or null to use the fallback.
+     */
+    public void setLocalityEnv(final String localityEnv) {
+        this.localityEnv = localityEnv;
+    }
+
+    // --------------------------------------------------
+
+    private Double localityMinHealthyFraction;
+    private static final double DEFAULT_LOCALITY_MIN_HEALTHY_FRACTION = 0.7;
+
+    /**
+     * Gets the min share of the local endpoints that must be ready to keep the traffic local.
+     *
+     * @return The min healthy fraction.
+     * @see #setLocalityMinHealthyFraction(Double)
+     */
+    public double getLocalityMinHealthyFraction() {
+        return this.localityMinHealthyFraction == null ? DEFAULT_LOCALITY_MIN_HEALTHY_FRACTION
+                : this.localityMinHealthyFraction;
+    }
+
+    /**
+     * Sets the min share of the local endpoints that must be ready to keep the traffic local. Below it the calls are
+     * spread over the ready endpoints of all the envs, so the remaining local endpoints aren't overloaded. Defaults
+     * to {@code 0.7}.
+     *
+     * @param localityMinHealthyFraction The new min healthy fraction, or null to use the fallback.
+     */
+    public void setLocalityMinHealthyFraction(final Double localityMinHealthyFraction) {
+        this.localityMinHealthyFraction = localityMinHealthyFraction;
+    }
+
+    // --------------------------------------------------
+    // leastRequestWeighted
+    // --------------------------------------------------
+
+    private Boolean leastRequestWeighted;
+    private static final boolean DEFAULT_LEAST_REQUEST_WEIGHTED = true;
+
+    /**
+     * Gets whether the {@code least_request} policy compares the calls in flight relative to the endpoint weights.
+     *
+     * @return True, if the endpoint weights are applied. False otherwise.
+     * @see #setLeastRequestWeighted(Boolean)
+     */
+    public boolean isLeastRequestWeighted() {
+        return this.leastRequestWeighted == null ? DEFAULT_LEAST_REQUEST_WEIGHTED : this.leastRequestWeighted;
+    }
+
+    /**
+     * Sets whether the {@code least_request} policy compares the calls in flight relative to the endpoint weights.
+     * When enabled an endpoint of twice the weight is expected to carry twice the calls. Defaults to {@code true}.
+     *
+     * @param leastRequestWeighted Whether the endpoint weights are applied, or null to use the fallback.
+     */
+    public void setLeastRequestWeighted(final Boolean leastRequestWeighted) {
+        this.leastRequestWeighted = leastRequestWeighted;
+    }
+
+    // --------------------------------------------------
+    // peakEwma / outlier ejection
+    // --------------------------------------------------
+
+    @DurationUnit(ChronoUnit.SECONDS)
+    private Duration peakEwmaDecayTime;
+    private static final Duration DEFAULT_PEAK_EWMA_DECAY_TIME = Duration.of(10, ChronoUnit.SECONDS);
+
+    /**
+     * Gets the decay time of the latency and error rate moving averages kept per endpoint.
+     *
+     * @return The decay time of the moving averages.
+     * @see #setPeakEwmaDecayTime(Duration)
+     */
+    public Duration getPeakEwmaDecayTime() {
+        return this.peakEwmaDecayTime == null ? DEFAULT_PEAK_EWMA_DECAY_TIME : this.peakEwmaDecayTime;
+    }
+
+    /**
+     * Sets the decay time of the latency and error rate moving averages kept per endpoint. A latency peak is taken
+     * immediately and decays within about this time. Defaults to {@code 10s}. Default unit
+     * {@link ChronoUnit#SECONDS SECONDS}.
+     *
+     * @param peakEwmaDecayTime The new decay time, or null to use the fallback.
+     */
+    public void setPeakEwmaDecayTime(final Duration peakEwmaDecayTime) {
+        this.peakEwmaDecayTime = peakEwmaDecayTime;
+    }
+
+    // --------------------------------------------------
+
+    private Double outlierErrorRate;
+    private static final double DEFAULT_OUTLIER_ERROR_RATE = 0.5;
+
+    /**
+     * Gets the error rate above which the {@code peak_ewma} policy ejects an endpoint.
+     *
+     * @return The error rate threshold.
+     * @see #setOutlierErrorRate(Double)
+     */
+    public double getOutlierErrorRate() {
+        return this.outlierErrorRate == null ? DEFAULT_OUTLIER_ERROR_RATE : this.outlierErrorRate;
+    }
+
+    /**
+     * Sets the error rate above which the {@code peak_ewma} policy ejects an endpoint. Only the failures telling
+     * about the endpoint health count, e.g. {@code UNAVAILABLE} or {@code DEADLINE_EXCEEDED}. Defaults to
+     * {@code 0.5}. {@code 1} never ejects for errors.
+     *
+     * @param outlierErrorRate The new error rate threshold, or null to use the fallback.
+     */
+    public void setOutlierErrorRate(final Double outlierErrorRate) {
+        this.outlierErrorRate = outlierErrorRate;
+    }
+
+    // --------------------------------------------------
+
+    @DurationUnit(ChronoUnit.MILLIS)
+    private Duration outlierLatency;
+    private static final Duration DEFAULT_OUTLIER_LATENCY = Duration.of(2000, ChronoUnit.MILLIS);
+
+    /**
+     * Gets the latency above which the {@code peak_ewma} policy ejects an endpoint.
+     *
+     * @return The latency threshold.
+     * @see #setOutlierLatency(Duration)
+     */
+    public Duration getOutlierLatency() {
+        return this.outlierLatency == null ? DEFAULT_OUTLIER_LATENCY : this.outlierLatency;
+    }
+
+    /**
+     * Sets the latency above which the {@code peak_ewma} policy ejects an endpoint, compared with the peak
+     * sensitive moving average of its calls. Defaults to {@code 2000ms}. Default unit
+     * {@link ChronoUnit#MILLIS MILLIS}. {@code 0} never ejects for latency.
+     *
+     * @param outlierLatency The new latency threshold, or null to use the fallback.
+     */
+    public void setOutlierLatency(final Duration outlierLatency) {
+        this.outlierLatency = outlierLatency;
+    }
+
+    // --------------------------------------------------
+
+    @DurationUnit(ChronoUnit.SECONDS)
+    private Duration outlierEjectionTime;
+    private static final Duration DEFAULT_OUTLIER_EJECTION_TIME = Duration.of(30, ChronoUnit.SECONDS);
+
+    /**
+     * Gets the base time an ejected endpoint stays out of the rotation.
+     *
+     * @return The base ejection time.
+     * @see #setOutlierEjectionTime(Duration)
+     */
+    public Duration getOutlierEjectionTime() {
+        return this.outlierEjectionTime == null ? DEFAULT_OUTLIER_EJECTION_TIME : this.outlierEjectionTime;
+    }
+
+    /**
+     * Sets the base time an ejected endpoint stays out of the rotation. An endpoint ejected again soon after being
+     * re-admitted stays out for a multiple of it. Defaults to {@code 30s}. Default unit
+     * {@link ChronoUnit#SECONDS SECONDS}.
+     *
+     * @param outlierEjectionTime The new base ejection time, or null to use the fallback.
+     */
+    public void setOutlierEjectionTime(final Duration outlierEjectionTime) {
+        this.outlierEjectionTime = outlierEjectionTime;
+    }
+
+    // --------------------------------------------------
+
+    private Integer outlierMaxEjectionPercent;
+    private static final int DEFAULT_OUTLIER_MAX_EJECTION_PERCENT = 50;
+
+    /**
+     * Gets the max percentage of the ready endpoints that can be ejected at the same time.
+     *
+     * @return The max ejection percentage.
+     * @see #setOutlierMaxEjectionPercent(Integer)
+     */
+    public int getOutlierMaxEjectionPercent() {
+        return this.outlierMaxEjectionPercent == null ? DEFAULT_OUTLIER_MAX_EJECTION_PERCENT
+                : this.outlierMaxEjectionPercent;
+    }
+
+    /**
+     * Sets the max percentage of the ready endpoints that can be ejected at the same time, so a service wide problem
+     * doesn't eject every endpoint. Defaults to {@code 50}.
+     *
+     * @param outlierMaxEjectionPercent The new max ejection percentage, or null to use the fallback.
+     */
+    public void setOutlierMaxEjectionPercent(final Integer outlierMaxEjectionPercent) {
+        this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+    }
+
+    // --------------------------------------------------
+    // ringHash
+    // --------------------------------------------------
+
+    private String ringHashHeader;
+    private static final String DEFAULT_RING_HASH_HEADER = "x-hash-key";
+
+    /**
+     * Gets the request header the {@code ring_hash} policy reads the hash key from.
+     *
+     * @return The hash key header.
+     * @see #setRingHashHeader(String)
+     */
+    public String getRingHashHeader() {
+        return this.ringHashHeader == null ? DEFAULT_RING_HASH_HEADER : this.ringHashHeader;
+    }
+
+    /**
+     * Sets the request header the {@code ring_hash} policy reads the hash key from, e.g. the user or campaign id. The
+     * {@code RingHashLoadBalancer.HASH_KEY} call option takes precedence over it. A header named with the
+     * {@code -bin} suffix is read as binary, and its bytes are hashed. Defaults to {@code x-hash-key}.
+     *
+     * @param ringHashHeader The new hash key header, or null to use the fallback.
+     */
+    public void setRingHashHeader(final String ringHashHeader) {
+        this.ringHashHeader = ringHashHeader;
+    }
+
+    // --------------------------------------------------
+
+    private Integer ringHashVirtualNodes;
+    private static final int DEFAULT_RING_HASH_VIRTUAL_NODES = 100;
+
+    /**
+     * Gets the points an endpoint of the default weight owns on the hash ring.
+     *
+     * @return The points per endpoint.
+     * @see #setRingHashVirtualNodes(Integer)
+     */
+    public int getRingHashVirtualNodes() {
+        return this.ringHashVirtualNodes == null ? DEFAULT_RING_HASH_VIRTUAL_NODES : this.ringHashVirtualNodes;
+    }
+
+    /**
+     * Sets the points an endpoint of the default weight owns on the hash ring, the other endpoints own points in
+     * proportion to their weight. More points spread the keys more evenly. Defaults to {@code 100}.
+     *
+     * @param ringHashVirtualNodes The new points per endpoint, or null to use the fallback.
+     */
+    public void setRingHashVirtualNodes(final Integer ringHashVirtualNodes) {
+        this.ringHashVirtualNodes = ringHashVirtualNodes;
+    }
+
+    // --------------------------------------------------
+
+    private Double ringHashLoadFactor;
+    private static final double DEFAULT_RING_HASH_LOAD_FACTOR = 1.25;
+
+    /**
+     * Gets the bound of the calls in flight of one endpoint, relative to the average, under the {@code ring_hash}
+     * policy.
+     *
+     * @return The load factor.
+     * @see #setRingHashLoadFactor(Double)
+     */
+    public double getRingHashLoadFactor() {
+        return this.ringHashLoadFactor == null ? DEFAULT_RING_HASH_LOAD_FACTOR : this.ringHashLoadFactor;
+    }
+
+    /**
+     * Sets the bound of the calls in flight of one endpoint, relative to the average, under the {@code ring_hash}
+     * policy. A call whose endpoint is above the bound overflows to the next endpoint on the ring. Defaults to
+     * {@code 1.25}. {@code 0} disables the bound.
+     *
+     * @param ringHashLoadFactor The new load factor, or null to use the fallback.
+     */
+    public void setRingHashLoadFactor(final Double ringHashLoadFactor) {
+        this.ringHashLoadFactor = ringHashLoadFactor;
+    }
+
+    // --------------------------------------------------
+    // concurrencyLimit
+    // --------------------------------------------------
+
+    private Boolean concurrencyLimitEnable;
+    private static final boolean DEFAULT_CONCURRENCY_LIMIT_ENABLE = false;
+
+    /**
+     * Gets whether the calls in flight to every target service are limited adaptively.
+     *
+     * @return True, if the concurrency limit is enabled.
+     * @see #setConcurrencyLimitEnable(Boolean)
+     */
+    public boolean isConcurrencyLimitEnable() {
+        return this.concurrencyLimitEnable == null ? DEFAULT_CONCURRENCY_LIMIT_ENABLE : this.concurrencyLimitEnable;
+    }
+
+    /**
+     * Sets whether the calls in flight to every target service are limited adaptively. The limit of a target grows
+     * by one with every successful call made while at least half of it is used, and shrinks by the
+     * {@link #getConcurrencyLimitBackoffRatio() backoff ratio} with every call that fails from overload or takes
+     * more than twice the usual latency. The calls over the limit fail at once with {@code RESOURCE_EXHAUSTED}
+     * instead of queuing on a saturated target. Defaults to {@code false}.
+     *
+     * @param concurrencyLimitEnable Whether to limit the concurrency, or null to use the fallback.
+     */
+    public void setConcurrencyLimitEnable(final Boolean concurrencyLimitEnable) {
+        this.concurrencyLimitEnable = concurrencyLimitEnable;
+    }
+
+    private Integer concurrencyLimitInitial;
+    private static final int DEFAULT_CONCURRENCY_LIMIT_INITIAL = 20;
+
+    /**
+     * Gets the concurrency limit a target starts with.
+     *
+     * @return The initial concurrency limit.
+     * @see #setConcurrencyLimitInitial(Integer)
+     */
+    public int getConcurrencyLimitInitial() {
+        return this.concurrencyLimitInitial == null ? DEFAULT_CONCURRENCY_LIMIT_INITIAL : this.concurrencyLimitInitial;
+    }
+
+    /**
+     * Sets the concurrency limit a target starts with. Defaults to {@code 20}.
+     *
+     * @param concurrencyLimitInitial The new initial limit, or null to use the fallback.
+     */
+    public void setConcurrencyLimitInitial(final Integer concurrencyLimitInitial) {
+        this.concurrencyLimitInitial = concurrencyLimitInitial;
+    }
+
+    private Integer concurrencyLimitMin;
+    private static final int DEFAULT_CONCURRENCY_LIMIT_MIN = 1;
+
+    /**
+     * Gets the lowest concurrency limit of a target.
+     *
+     * @return The min concurrency limit.
+     * @see #setConcurrencyLimitMin(Integer)
+     */
+    public int getConcurrencyLimitMin() {
+        return this.concurrencyLimitMin == null ? DEFAULT_CONCURRENCY_LIMIT_MIN : this.concurrencyLimitMin;
+    }
+
+    /**
+     * Sets the lowest concurrency limit of a target, so a recovered target still gets calls to prove it. Defaults
+     * to {@code 1}.
+     *
+     * @param concurrencyLimitMin The new min limit, or null to use the fallback.
+     */
+    public void setConcurrencyLimitMin(final Integer concurrencyLimitMin) {
+        this.concurrencyLimitMin = concurrencyLimitMin;
+    }
+
+    private Integer concurrencyLimitMax;
+    private static final int DEFAULT_CONCURRENCY_LIMIT_MAX = 1000;
+
+    /**
+     * Gets the highest concurrency limit of a target.
+     *
+     * @return The max concurrency limit.
+     * @see #setConcurrencyLimitMax(Integer)
+     */
+    public int getConcurrencyLimitMax() {
+        return this.concurrencyLimitMax == null ? DEFAULT_CONCURRENCY_LIMIT_MAX : this.concurrencyLimitMax;
+    }
+
+    /**
+     * Sets the highest concurrency limit of a target. Defaults to {@code 1000}.
+     *
+     * @param concurrencyLimitMax The new max limit, or null to use the fallback.
+     */
+    public void setConcurrencyLimitMax(final Integer concurrencyLimitMax) {
+        this.concurrencyLimitMax = concurrencyLimitMax;
+    }
+
+    private Double concurrencyLimitBackoffRatio;
+    private static final double DEFAULT_CONCURRENCY_LIMIT_BACKOFF_RATIO = 0.9;
+
+    /**
+     * Gets the factor the concurrency limit of a target is multiplied by on overload.
+     *
+     * @return The backoff ratio.
+     * @see #setConcurrencyLimitBackoffRatio(Double)
+     */
+    public double getConcurrencyLimitBackoffRatio() {
+        return this.concurrencyLimitBackoffRatio == null ? DEFAULT_CONCURRENCY_LIMIT_BACKOFF_RATIO
+                : this.concurrencyLimitBackoffRatio;
+    }
+
+    /**
+     * Sets the factor the concurrency limit of a target is multiplied by on overload, between 0 and 1. Defaults to
+     * {@code 0.9}.
+     *
+     * @param concurrencyLimitBackoffRatio The new backoff ratio, or null to use the fallback.
+     */
+    public void setConcurrencyLimitBackoffRatio(final Double concurrencyLimitBackoffRatio) {
+        this.concurrencyLimitBackoffRatio = concurrencyLimitBackoffRatio;
+    }
+
+    // --------------------------------------------------
+    // responseCache
+    // --------------------------------------------------
+
+    private Boolean responseCacheEnable;
+    private static final boolean DEFAULT_RESPONSE_CACHE_ENABLE = false;
+
+    /**
+     * Gets whether the responses of the {@link #getResponseCache() cached methods} are cached.
+     *
+     * @return True, if the response cache is enabled.
+     * @see #setResponseCacheEnable(Boolean)
+     */
+    public boolean isResponseCacheEnable() {
+        return this.responseCacheEnable == null ? DEFAULT_RESPONSE_CACHE_ENABLE : this.responseCacheEnable;
+    }
+
+    /**
+     * Sets whether the responses of the {@link #getResponseCache() cached methods} are cached. Defaults to
+     * {@code false}.
+     *
+     * @param responseCacheEnable Whether to cache the responses, or null to use the fallback.
+     */
+    public void setResponseCacheEnable(final Boolean responseCacheEnable) {
+        this.responseCacheEnable = responseCacheEnable;
+    }
+
+    private Map<String, ResponseCacheProperties> responseCache = new LinkedHashMap<>();
+
+    /**
+     * Gets the response caches by full method name.
+     *
+     * @return The response caches by method.
+     * @see #setResponseCache(Map)
+     */
+    public Map<String, ResponseCacheProperties> getResponseCache() {
+        return this.responseCache;
+    }
+
+    /**
+     * Sets the response caches by full method name, like {@code com.example.AdService/GetCampaign}. The successful
+     * responses of a cached unary method are kept by the target, the serialized request and the values of its
+     * {@link ResponseCacheProperties#getKeyHeaders() key headers}, the same request is answered from the cache until
+     * the response expires. Defaults to none.
+     *
+     * <p>
+     * Any other header is ignored by the cache: a response cached for one caller is served to every other caller of
+     * the same request. A method whose response depends on who calls it, through per-user auth headers, tenant
+     * headers or call credentials, must either list those headers as key headers or not be cached at all. Call
+     * credentials are applied below the interceptors and can never be part of the key.
+     * </p>
+     *
+     * <p>
+     * The name must be bracketed to be bound as is, like
+     * {@code grpc.client.response-cache[com.example.AdService/GetCampaign].ttl=10s}, or the key
+     * {@code "[com.example.AdService/GetCampaign]"} in yaml. Without the brackets the binder splits the name on its
+     * dots and drops the slash, and the method is never cached.
+     * </p>
+     *
+     * @param responseCache The response caches by method.
+     */
+    public void setResponseCache(final Map<String, ResponseCacheProperties> responseCache) {
+        this.responseCache = responseCache == null ? new LinkedHashMap<>() : responseCache;
+    }
+
+    // --------------------------------------------------
+    // warmUp
+    // --------------------------------------------------
+
+    private Boolean warmUpEnable;
+    private static final boolean DEFAULT_WARM_UP_ENABLE = false;
+
+    /**
+     * Gets whether the channels are connected at startup.
+     *
+     * @return True, if the channels are warmed up.
+     * @see #setWarmUpEnable(Boolean)
+     */
+    public boolean isWarmUpEnable() {
+        return this.warmUpEnable == null ? DEFAULT_WARM_UP_ENABLE : this.warmUpEnable;
+    }
+
+    /**
+     * Sets whether the channels are connected at startup. When enabled, the startup waits, at most for the
+     * {@link #getWarmUpTimeout() warm up timeout}, until every channel created so far has resolved its endpoints and
+     * connected, so the first calls don't pay the resolution and connection latency. Defaults to {@code false}.
+     *
+     * @param warmUpEnable Whether to warm up the channels, or null to use the fallback.
+     */
+    public void setWarmUpEnable(final Boolean warmUpEnable) {
+        this.warmUpEnable = warmUpEnable;
+    }
+
+    @DurationUnit(ChronoUnit.SECONDS)
+    private Duration warmUpTimeout;
+    private static final Duration DEFAULT_WARM_UP_TIMEOUT = Duration.of(10, ChronoUnit.SECONDS);
+
+    /**
+     * Gets the longest the startup waits for the channels to connect.
+     *
+     * @return The warm up timeout.
+     * @see #setWarmUpTimeout(Duration)
+     */
+    public Duration getWarmUpTimeout() {
+        return this.warmUpTimeout == null ? DEFAULT_WARM_UP_TIMEOUT : this.warmUpTimeout;
+    }
+
+    /**
+     * Sets the longest the startup waits for the channels to connect. The channels not ready by then are reported
+     * and keep connecting in the background. Defaults to {@code 10s}. Default unit {@link ChronoUnit#SECONDS
+     * SECONDS}.
+     *
+     * @param warmUpTimeout The new warm up timeout, or null to use the fallback.
+     */
+    public void setWarmUpTimeout(final Duration warmUpTimeout) {
+        this.warmUpTimeout = warmUpTimeout;
+    }
+
+    // --------------------------------------------------
+    // retry & hedging
+    // --------------------------------------------------
+
+    private Map<String, RetryPolicyProperties> retry = new LinkedHashMap<>();
+
+    /**
+     * Gets the retry policies by service or method name.
+     *
+     * @return The retry policies.
+     * @see #setRetry(Map)
+     */
+    public Map<String, RetryPolicyProperties> getRetry() {
+        return this.retry;
+    }
+
+    /**
+     * Sets the retry policies by service or method name. A name is either the full service name, like
+     * {@code com.example.AdService}, or the full method name, like {@code com.example.AdService/Bid}, the policy of
+     * a method overrides the one of its service. The policies are turned into the default service config of the
+     * channels, so the calls are retried within their deadline. Defaults to none.
+     *
+     * <p>
+     * The name must be bracketed to be bound as is, like
+     * {@code grpc.client.retry[com.example.AdService/Bid].max-attempts=3}, or the key
+     * {@code "[com.example.AdService/Bid]"} in yaml. Without the brackets the binder splits the name on its dots and
+     * drops the slash, and the policy never matches.
+     * </p>
+     *
+     * @param retry The retry policies by service or method name.
+     */
+    public void setRetry(final Map<String, RetryPolicyProperties> retry) {
+        this.retry = retry == null ? new LinkedHashMap<>() : retry;
+    }
+
+    private Map<String, HedgingPolicyProperties> hedging = new LinkedHashMap<>();
+
+    /**
+     * Gets the hedging policies by service or method name.
+     *
+     * @return The hedging policies.
+     * @see #setHedging(Map)
+     */
+    public Map<String, HedgingPolicyProperties> getHedging() {
+        return this.hedging;
+    }
+
+    /**
+     * Sets the hedging policies by service or method name, named and bracketed like the
+     * {@link #setRetry(Map) retry policies}, like
+     * {@code grpc.client.hedging[com.example.AdService/Bid].max-attempts=2}.
+     * A name can't have both a retry and a hedging policy. Only idempotent methods should be hedged. Defaults to
+     * none.
+     *
+     * @param hedging The hedging policies by service or method name.
+     */
+    public void setHedging(final Map<String, HedgingPolicyProperties> hedging) {
+        this.hedging = hedging == null ? new LinkedHashMap<>() : hedging;
+    }
+
+    private Integer retryThrottlingMaxTokens;
+    private static final int DEFAULT_RETRY_THROTTLING_MAX_TOKENS = 10;
+
+    /**
+     * Gets the token bucket size of the retry throttling.
+     *
+     * @return The max tokens of the retry throttling.
+     * @see #setRetryThrottlingMaxTokens(Integer)
+     */
+    public int getRetryThrottlingMaxTokens() {
+        return this.retryThrottlingMaxTokens == null ? DEFAULT_RETRY_THROTTLING_MAX_TOKENS
+                : this.retryThrottlingMaxTokens;
+    }
+
+    /**
+     * Sets the token bucket size of the retry throttling, from 1 to 1000. Every failed call of a channel takes a
+     * token, every successful one gives back {@link #getRetryThrottlingTokenRatio() the token ratio}. While less
+     * than half of the tokens are left, the calls are neither retried nor hedged, so the retries can't amplify an
+     * overload. Defaults to {@code 10}.
+     *
+     * @param retryThrottlingMaxTokens The new max tokens, or null to use the fallback.
+     */
+    public void setRetryThrottlingMaxTokens(final Integer retryThrottlingMaxTokens) {
+        this.retryThrottlingMaxTokens = retryThrottlingMaxTokens;
+    }
+
+    private Double retryThrottlingTokenRatio;
+    private static final double DEFAULT_RETRY_THROTTLING_TOKEN_RATIO = 0.1;
+
+    /**
+     * Gets the tokens a successful call gives back to the retry throttling.
+     *
+     * @return The token ratio of the retry throttling.
+     * @see #setRetryThrottlingTokenRatio(Double)
+     */
+    public double getRetryThrottlingTokenRatio() {
+        return this.retryThrottlingTokenRatio == null ? DEFAULT_RETRY_THROTTLING_TOKEN_RATIO
+                : this.retryThrottlingTokenRatio;
+    }
+
+    /**
+     * Sets the tokens a successful call gives back to the retry throttling, above 0. Defaults to {@code 0.1}, so
+     * the retries are stopped once more than about one call in ten fails.
+     *
+     * @param retryThrottlingTokenRatio The new token ratio, or null to use the fallback.
+     */
+    public void setRetryThrottlingTokenRatio(final Double retryThrottlingTokenRatio) {
+        this.retryThrottlingTokenRatio = retryThrottlingTokenRatio;
+    }
+
     // --------------------------------------------------
     // KeepAlive
     // --------------------------------------------------
@@ -0,0 +1,33 @@
+package com.framework.starter.grpc.client.config;
+
+import com.google.common.collect.Lists;
+import io.grpc.Status;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 功能概述    hedging policy of a service or a method, see the hedgingPolicy of the gRPC service config. only for
+ * idempotent methods, the hedged attempts may all reach a server
+ * className:      HedgingPolicyProperties
+ * package:        com.framework.starter.grpc.client.config
+ * author:         Gavin.Xu
+ * date:           2021/7/22
+ */
+@Data
+public class HedgingPolicyProperties {
+    /**
+     * attempts sent for a call including the first one, capped at 5 by grpc
+     */
+    private int maxAttempts = 2;
+    /**
+     * delay before sending the next attempt while no response came, picked by the load balancer so usually to
+     * another endpoint. 0 sends all the attempts at once
+     */
+    private Duration hedgingDelay = Duration.ofMillis(50);
+    /**
+     * status codes that don't fail the call while other attempts are pending, any other code fails it at once
+     */
+    private List<Status.Code> nonFatalStatusCodes = Lists.newArrayList();
+}
@@ -0,0 +1,32 @@
+package com.framework.starter.grpc.client.config;
+
+import com.google.common.collect.Lists;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 功能概述    response cache of a unary method, only for the methods whose response depends on nothing but the
+ * request and the {@link #keyHeaders key headers}
+ * className:      ResponseCacheProperties
+ * package:        com.framework.starter.grpc.client.config
+ * author:         Gavin.Xu
+ * date:           2021/7/27
+ */
+@Data
+public class ResponseCacheProperties {
+    /**
+     * how long a response is served after it was received
+     */
+    private Duration ttl = Duration.ofSeconds(10);
+    /**
+     * max responses kept, the least valuable ones by frequency and recency are evicted beyond it
+     */
+    private long maxSize = 10_000;
+    /**
+     * request headers whose values are part of the cache key along with the request, like the caller or tenant
+     * headers the response depends on. a {@code -bin} header is compared by its bytes
+     */
+    private List<String> keyHeaders = Lists.newArrayList();
+}
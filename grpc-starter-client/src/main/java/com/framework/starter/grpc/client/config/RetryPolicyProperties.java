@@ -0,0 +1,39 @@
+package com.framework.starter.grpc.client.config;
+
+import com.google.common.collect.Lists;
+import io.grpc.Status;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 功能概述    retry policy of a service or a method, see the retryPolicy of the gRPC service config
+ * className:      RetryPolicyProperties
+ * package:        com.framework.starter.grpc.client.config
+ * author:         Gavin.Xu
+ * date:           2021/7/22
+ */
+@Data
+public class RetryPolicyProperties {
+    /**
+     * attempts of a call including the first one, capped at 5 by grpc
+     */
+    private int maxAttempts = 3;
+    /**
+     * backoff before the first retry, a retry waits a random time between 0 and the current backoff
+     */
+    private Duration initialBackoff = Duration.ofMillis(100);
+    /**
+     * upper bound of the backoff
+     */
+    private Duration maxBackoff = Duration.ofSeconds(1);
+    /**
+     * the backoff is multiplied by it after every retry
+     */
+    private double backoffMultiplier = 2;
+    /**
+     * status codes the call is retried on
+     */
+    private List<Status.Code> retryableStatusCodes = Lists.newArrayList(Status.Code.UNAVAILABLE);
+}
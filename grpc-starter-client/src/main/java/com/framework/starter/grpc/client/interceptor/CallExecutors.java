@@ -0,0 +1,48 @@
+package com.framework.starter.grpc.client.interceptor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.CallOptions;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能概述    executors of the listener callbacks an interceptor makes itself, instead of the channel. like the channel,
+ * a callback runs on the executor of the call options, the one of the blocking stubs included, or else off the
+ * calling thread, so the listener is never called back reentrantly from {@code start} or {@code halfClose}.
+ * the shared callback executor is bounded, its threads and its queue, a callback finding it full runs on the calling
+ * thread instead, so a burst of rejected or cached calls slows its callers down rather than piling up threads.
+ * className:      CallExecutors
+ * package:        com.framework.starter.grpc.client.interceptor
+ * author:         Gavin.Xu
+ * date:           2021/7/28
+ */
+public final class CallExecutors {
+
+    private static final int CALLBACK_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int CALLBACK_QUEUE_SIZE = 10_000;
+    private static final ThreadPoolExecutor CALLBACK_EXECUTOR = newCallbackExecutor();
+
+    private CallExecutors() {
+    }
+
+    private static ThreadPoolExecutor newCallbackExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(CALLBACK_THREADS, CALLBACK_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(CALLBACK_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("grpc-client-callback-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        // no thread kept while no call is rejected or cached
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return executor to call back the listener of a call with the given options
+     */
+    public static Executor of(CallOptions callOptions) {
+        Executor executor = callOptions.getExecutor();
+        return executor != null ? executor : CALLBACK_EXECUTOR;
+    }
+}
@@ -0,0 +1,250 @@
+package com.framework.starter.grpc.client.interceptor;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 功能概述    limits the calls in flight to every target service with an AIMD limit: the limit grows by one with every
+ * successful call made while at least half of it is in use, and is multiplied by the backoff ratio on a call that
+ * failed from overload or completed while the recent latency of its method is more than {@value #RTT_TOLERANCE}
+ * times the long term one, at most once per recent latency, as the calls completing together saw the same overload.
+ * the latency is estimated per method, whether a call succeeded or not, so a method slow by nature neither reads
+ * as an overload of the fast ones nor hides theirs.
+ * the calls over the limit fail at once with {@code RESOURCE_EXHAUSTED}, so a slow target isn't buried under
+ * queued calls and retries. the target of a call is its authority, the service key. only the unary calls are
+ * limited, a streaming call lives as long as its caller wants and says nothing of the load of the target.
+ * the current limit of every target is exposed by {@link #getLimits()} and the {@value #LIMIT_METRIC} gauge.
+ * className:      ConcurrencyLimitClientInterceptor
+ * package:        com.framework.starter.grpc.client.interceptor
+ * author:         Gavin.Xu
+ * date:           2021/7/23
+ */
+@Slf4j
+@GrpcGlobalClientInterceptor
+@Order(InterceptorOrder.ORDER_CONCURRENCY_LIMIT)
+public class ConcurrencyLimitClientInterceptor implements ClientInterceptor {
+
+    public static final String LIMIT_METRIC = "grpc.client.concurrency.limit";
+    /**
+     * recent latency above the long term one times it counts as an overload
+     */
+    private static final double RTT_TOLERANCE = 2.0;
+    /**
+     * calls the long term latency of a method is averaged over
+     */
+    private static final int LONG_RTT_WINDOW = 600;
+    /**
+     * calls the recent latency of a method is averaged over
+     */
+    private static final int SHORT_RTT_WINDOW = 10;
+
+    private final GrpcClientProperties properties;
+    /**
+     * target -> its limit
+     */
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimitClientInterceptor(GrpcClientProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (method.getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.newCall(method, callOptions);
+        }
+        String target = callOptions.getAuthority() != null ? callOptions.getAuthority() : next.authority();
+        Limit limit = this.limits.computeIfAbsent(target, this::newLimit);
+        final ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+        return new ForwardingClientCall<ReqT, RespT>() {
+
+            /**
+             * the call failing in its place once over the limit, the rest of the call goes to it
+             */
+            private ClientCall<ReqT, RespT> rejected;
+
+            @Override
+            protected ClientCall<ReqT, RespT> delegate() {
+                return this.rejected != null ? this.rejected : call;
+            }
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                int inFlight = limit.tryAcquire();
+                if (inFlight < 0) {
+                    // the real call is never started, nothing to cancel
+                    this.rejected = new FailingClientCall<>(Status.RESOURCE_EXHAUSTED
+                            .withDescription("concurrency limit " + limit.getLimit() + " of " + target + " reached"), callOptions);
+                    this.rejected.start(responseListener, headers);
+                    return;
+                }
+                final long start = System.nanoTime();
+                Listener<RespT> listener = new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                        responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        limit.release(method.getFullMethodName(), System.nanoTime() - start, inFlight,
+                                isOverload(status));
+                        super.onClose(status, trailers);
+                    }
+                };
+                try {
+                    super.start(listener, headers);
+                } catch (RuntimeException | Error e) {
+                    // never closed, the permit would be lost
+                    limit.cancel();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return target -> its current concurrency limit
+     */
+    public Map<String, Integer> getLimits() {
+        return this.limits.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getLimit()));
+    }
+
+    private Limit newLimit(String target) {
+        Limit limit = new Limit(this.properties.getConcurrencyLimitInitial(), this.properties.getConcurrencyLimitMin(),
+                this.properties.getConcurrencyLimitMax(), this.properties.getConcurrencyLimitBackoffRatio());
+        Gauge.builder(LIMIT_METRIC, limit, Limit::getLimit)
+                .description("concurrency limit of the grpc client calls to a target")
+                .tag("target", target)
+                .register(Metrics.globalRegistry);
+        return limit;
+    }
+
+    private static boolean isOverload(Status status) {
+        switch (status.getCode()) {
+            case RESOURCE_EXHAUSTED:
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * AIMD limit of one target
+     */
+    static final class Limit {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final int min;
+        private final int max;
+        private final double backoffRatio;
+        private volatile double limit;
+        /**
+         * full method name -> its latency, guarded by this
+         */
+        private final Map<String, Latency> latencies = new HashMap<>();
+        /**
+         * when the limit was last backed off, guarded by this
+         */
+        private long lastBackoffNanos;
+        private boolean backedOff;
+
+        Limit(int initial, int min, int max, double backoffRatio) {
+            this.min = Math.max(1, min);
+            this.max = Math.max(this.min, max);
+            this.backoffRatio = backoffRatio;
+            this.limit = Math.min(this.max, Math.max(this.min, initial));
+        }
+
+        /**
+         * @return the calls in flight including this one, -1 if over the limit
+         */
+        int tryAcquire() {
+            while (true) {
+                int current = this.inFlight.get();
+                if (current >= (int) this.limit) {
+                    return -1;
+                }
+                if (this.inFlight.compareAndSet(current, current + 1)) {
+                    return current + 1;
+                }
+            }
+        }
+
+        /**
+         * @param method   full method name of the call
+         * @param rttNanos latency of the call
+         * @param inFlight calls in flight when it started
+         * @param overload whether it failed from overload
+         */
+        synchronized void release(String method, long rttNanos, int inFlight, boolean overload) {
+            this.inFlight.decrementAndGet();
+            Latency latency = this.latencies.computeIfAbsent(method, k -> new Latency());
+            latency.update(rttNanos);
+            if (overload || latency.isSlow()) {
+                long now = System.nanoTime();
+                if (!this.backedOff || now - this.lastBackoffNanos >= latency.shortRtt) {
+                    this.limit = Math.max(this.min, this.limit * this.backoffRatio);
+                    this.lastBackoffNanos = now;
+                    this.backedOff = true;
+                }
+                return;
+            }
+            if (inFlight * 2 >= this.limit) {
+                // only grow while the limit is actually used
+                this.limit = Math.min(this.max, this.limit + 1);
+            }
+        }
+
+        /**
+         * gives the permit of a call that never ran back, leaving the limit and the latency as they are
+         */
+        void cancel() {
+            this.inFlight.decrementAndGet();
+        }
+
+        int getLimit() {
+            return (int) this.limit;
+        }
+    }
+
+    /**
+     * long term and recent ewma of the latency of one method, in nanos
+     */
+    static final class Latency {
+
+        private long samples;
+        private double longRtt;
+        private double shortRtt;
+
+        void update(long rttNanos) {
+            this.samples++;
+            // the averages start as plain means, so the first calls aren't weighted like a whole window
+            this.longRtt += (rttNanos - this.longRtt) / Math.min(this.samples, LONG_RTT_WINDOW);
+            this.shortRtt += (rttNanos - this.shortRtt) / Math.min(this.samples, SHORT_RTT_WINDOW);
+        }
+
+        /**
+         * @return whether the recent calls are much slower than usual, never before a recent window is filled
+         */
+        boolean isSlow() {
+            return this.samples >= SHORT_RTT_WINDOW && this.shortRtt > this.longRtt * RTT_TOLERANCE;
+        }
+    }
+}
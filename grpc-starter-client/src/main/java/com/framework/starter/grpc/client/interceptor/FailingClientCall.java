@@ -0,0 +1,53 @@
+package com.framework.starter.grpc.client.interceptor;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+import javax.annotation.Nullable;
+
+/**
+ * 功能概述    call that fails locally with a status, without reaching the channel. the listener is closed once, on the
+ * executor of {@link CallExecutors}, and everything the caller does with the call after starting it is ignored.
+ * className:      FailingClientCall
+ * package:        com.framework.starter.grpc.client.interceptor
+ * author:         Gavin.Xu
+ * date:           2021/7/28
+ */
+public final class FailingClientCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+
+    private final Status status;
+    private final CallOptions callOptions;
+
+    public FailingClientCall(Status status, CallOptions callOptions) {
+        this.status = status;
+        this.callOptions = callOptions;
+    }
+
+    @Override
+    public void start(Listener<RespT> responseListener, Metadata headers) {
+        CallExecutors.of(this.callOptions).execute(() -> responseListener.onClose(this.status, new Metadata()));
+    }
+
+    @Override
+    public void request(int numMessages) {
+    }
+
+    @Override
+    public void cancel(@Nullable String message, @Nullable Throwable cause) {
+    }
+
+    @Override
+    public void halfClose() {
+    }
+
+    @Override
+    public void sendMessage(ReqT message) {
+    }
+
+    @Override
+    public boolean isReady() {
+        return false;
+    }
+}
@@ -2,12 +2,19 @@ package com.framework.starter.grpc.client.interceptor;
 
 import com.framework.starter.grpc.client.config.GrpcClientProperties;
 import io.grpc.*;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
- * 功能概述
+ * 功能概述    gives every call the tightest of its deadlines: the one already in its call options, the deadline of the
+ * inbound call it is made for minus {@link GrpcClientProperties#getDeadlineReserve()}, and the timeout configured
+ * for its method. the budget applied is recorded in the {@value #BUDGET_METRIC} timer, tagged by the method and the
+ * deadline that won.
  * className:      GrpcTimeoutClientInterceptor
  * package:        com.framework.starter.grpc.client.interceptor
  * author:         Gavin.Xu
@@ -16,7 +23,13 @@ import java.util.concurrent.TimeUnit;
 @GrpcGlobalClientInterceptor
 public class GrpcTimeoutClientInterceptor implements ClientInterceptor {
 
+    public static final String BUDGET_METRIC = "grpc.client.deadline.budget";
+
     private GrpcClientProperties grpcClientProperties;
+    /**
+     * method + source -> its timer
+     */
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
 
     public GrpcTimeoutClientInterceptor(GrpcClientProperties grpcClientProperties) {
         this.grpcClientProperties = grpcClientProperties;
@@ -24,8 +37,49 @@ public class GrpcTimeoutClientInterceptor implements ClientInterceptor {
 
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
-        Duration timeout = grpcClientProperties.getTimeout();
-        callOptions = callOptions.withDeadlineAfter(timeout.toNanos(), TimeUnit.NANOSECONDS);
-        return next.newCall(method,callOptions);
+        Duration timeout = timeoutOf(method);
+        Deadline deadline = Deadline.after(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        String source = "timeout";
+        Deadline callDeadline = callOptions.getDeadline();
+        if (callDeadline != null && callDeadline.isBefore(deadline)) {
+            deadline = callDeadline;
+            source = "call";
+        }
+        Deadline inboundDeadline = Context.current().getDeadline();
+        if (inboundDeadline != null) {
+            Deadline reserved = inboundDeadline.offset(-grpcClientProperties.getDeadlineReserve().toNanos(), TimeUnit.NANOSECONDS);
+            if (reserved.isBefore(deadline)) {
+                deadline = reserved;
+                source = "inbound";
+            }
+        }
+        timer(method.getFullMethodName(), source)
+                .record(Math.max(0, deadline.timeRemaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        return next.newCall(method, callOptions.withDeadline(deadline));
+    }
+
+    /**
+     * @return timeout of the method, else of its service, else the global one
+     */
+    private Duration timeoutOf(MethodDescriptor<?, ?> method) {
+        Map<String, Duration> timeouts = grpcClientProperties.getTimeouts();
+        if (!timeouts.isEmpty()) {
+            Duration timeout = timeouts.get(method.getFullMethodName());
+            if (timeout == null && method.getServiceName() != null) {
+                timeout = timeouts.get(method.getServiceName());
+            }
+            if (timeout != null) {
+                return timeout;
+            }
+        }
+        return grpcClientProperties.getTimeout();
+    }
+
+    private Timer timer(String method, String source) {
+        return timers.computeIfAbsent(method + '#' + source, k -> Timer.builder(BUDGET_METRIC)
+                .description("deadline budget given to the grpc client calls")
+                .tag("method", method)
+                .tag("source", source)
+                .register(Metrics.globalRegistry));
     }
 }
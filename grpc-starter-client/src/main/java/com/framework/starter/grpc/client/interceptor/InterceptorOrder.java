@@ -0,0 +1,26 @@
+package com.framework.starter.grpc.client.interceptor;
+
+import org.springframework.core.Ordered;
+
+/**
+ * 功能概述    orders of the global client interceptors of the starters, the lower the order the earlier the interceptor
+ * sees a call. the response cache comes first, so a cached response costs neither a circuit breaker permit nor a
+ * concurrency limit one, then the circuit breaker, so an open circuit doesn't take a concurrency limit permit, then
+ * the concurrency limit, next to the channel. the calls the limit rejects count as failures of the circuit breaker.
+ * interceptors without an order come after all of them.
+ * className:      InterceptorOrder
+ * package:        com.framework.starter.grpc.client.interceptor
+ * author:         Gavin.Xu
+ * date:           2021/7/30
+ */
+public final class InterceptorOrder {
+
+    public static final int ORDER_FIRST = Ordered.HIGHEST_PRECEDENCE;
+    public static final int ORDER_RESPONSE_CACHE = 1000;
+    public static final int ORDER_CIRCUIT_BREAKER = 2000;
+    public static final int ORDER_CONCURRENCY_LIMIT = 3000;
+    public static final int ORDER_LAST = Ordered.LOWEST_PRECEDENCE;
+
+    private InterceptorOrder() {
+    }
+}
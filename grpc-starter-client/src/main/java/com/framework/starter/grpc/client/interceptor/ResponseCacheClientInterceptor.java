@@ -0,0 +1,254 @@
+package com.framework.starter.grpc.client.interceptor;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import com.framework.starter.grpc.client.config.ResponseCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.ByteString;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 功能概述    caches the successful responses of the unary methods configured in
+ * {@link GrpcClientProperties#getResponseCache()}, by the target, the serialized request and the key headers. a
+ * cached request is answered without reaching the channel, on the executor of {@link CallExecutors} like any
+ * response, a missed one is sent once it is half closed and its response is cached. the other headers are ignored,
+ * see {@link GrpcClientProperties#setResponseCache(Map)} before caching a method that depends on its caller. the
+ * caches evict by W-TinyLFU beyond their max size, and report their hits and misses as the micrometer cache metrics
+ * named after the method.
+ * className:      ResponseCacheClientInterceptor
+ * package:        com.framework.starter.grpc.client.interceptor
+ * author:         Gavin.Xu
+ * date:           2021/7/27
+ */
+@Slf4j
+@GrpcGlobalClientInterceptor
+@Order(InterceptorOrder.ORDER_RESPONSE_CACHE)
+public class ResponseCacheClientInterceptor implements ClientInterceptor {
+
+    /**
+     * full method name -> responses of the method
+     */
+    private final Map<String, Cache<CacheKey, Object>> caches = new HashMap<>();
+    /**
+     * full method name -> headers in the key of its responses
+     */
+    private final Map<String, List<Metadata.Key<?>>> keyHeaders = new HashMap<>();
+
+    public ResponseCacheClientInterceptor(GrpcClientProperties properties) {
+        properties.getResponseCache().forEach((method, cacheProperties) -> {
+            if (method.indexOf('/') < 0) {
+                log.warn("grpc.client response-cache of {} isn't a full method name, configured without brackets?",
+                        method);
+            }
+            this.caches.put(method, newCache(method, cacheProperties));
+            this.keyHeaders.put(method, cacheProperties.getKeyHeaders().stream()
+                    .map(ResponseCacheClientInterceptor::headerKey)
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    private static Metadata.Key<?> headerKey(String name) {
+        return name.endsWith(Metadata.BINARY_HEADER_SUFFIX)
+                ? Metadata.Key.of(name, Metadata.BINARY_BYTE_MARSHALLER)
+                : Metadata.Key.of(name, Metadata.ASCII_STRING_MARSHALLER);
+    }
+
+    private static Cache<CacheKey, Object> newCache(String method, ResponseCacheProperties cacheProperties) {
+        Cache<CacheKey, Object> cache = Caffeine.newBuilder()
+                .expireAfterWrite(cacheProperties.getTtl())
+                .maximumSize(cacheProperties.getMaxSize())
+                .recordStats()
+                .build();
+        return CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, method);
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        Cache<CacheKey, Object> cache = this.caches.get(method.getFullMethodName());
+        if (cache == null || method.getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.newCall(method, callOptions);
+        }
+        String target = callOptions.getAuthority() != null ? callOptions.getAuthority() : next.authority();
+        return new CachingClientCall<>(method, callOptions, next, cache, target,
+                this.keyHeaders.get(method.getFullMethodName()));
+    }
+
+    /**
+     * holds the call back until the request is known, then answers it from the cache or sends it
+     */
+    private static final class CachingClientCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private final Cache<CacheKey, Object> cache;
+        private final String target;
+        private final List<Metadata.Key<?>> keyHeaders;
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private int requested;
+        private ReqT request;
+        /**
+         * the call sent on a miss
+         */
+        private ClientCall<ReqT, RespT> delegate;
+        private boolean closed;
+
+        CachingClientCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next,
+                          Cache<CacheKey, Object> cache, String target, List<Metadata.Key<?>> keyHeaders) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.cache = cache;
+            this.target = target;
+            this.keyHeaders = keyHeaders;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            if (this.delegate != null) {
+                this.delegate.request(numMessages);
+            } else {
+                this.requested += numMessages;
+            }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            this.request = message;
+        }
+
+        @Override
+        public void halfClose() {
+            if (this.closed) {
+                return;
+            }
+            final CacheKey key;
+            try {
+                key = new CacheKey(this.target, serialize(this.request), headerValues());
+            } catch (IOException | RuntimeException e) {
+                log.warn("serialize request of {} error, not cached", this.method.getFullMethodName(), e);
+                send(null);
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            RespT response = (RespT) this.cache.getIfPresent(key);
+            if (response != null) {
+                this.closed = true;
+                Listener<RespT> responseListener = this.listener;
+                // never on the calling thread, the listener of an async or future stub isn't reentrant
+                CallExecutors.of(this.callOptions).execute(() -> {
+                    responseListener.onHeaders(new Metadata());
+                    responseListener.onMessage(response);
+                    responseListener.onClose(Status.OK, new Metadata());
+                });
+                return;
+            }
+            send(key);
+        }
+
+        /**
+         * @return the values of the key headers in order, the binary ones as {@link ByteString}, null if absent
+         */
+        private List<Object> headerValues() {
+            List<Object> values = new ArrayList<>(this.keyHeaders.size());
+            for (Metadata.Key<?> header : this.keyHeaders) {
+                Object value = this.headers.get(header);
+                values.add(value instanceof byte[] ? ByteString.copyFrom((byte[]) value) : value);
+            }
+            return values;
+        }
+
+        private ByteString serialize(ReqT message) throws IOException {
+            try (InputStream stream = this.method.getRequestMarshaller().stream(message)) {
+                return ByteString.readFrom(stream);
+            }
+        }
+
+        /**
+         * @param key key the response is cached by, null to not cache it
+         */
+        private void send(@Nullable CacheKey key) {
+            this.delegate = this.next.newCall(this.method, this.callOptions);
+            this.delegate.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(this.listener) {
+
+                private RespT response;
+
+                @Override
+                public void onMessage(RespT message) {
+                    this.response = message;
+                    super.onMessage(message);
+                }
+
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    if (key != null && status.isOk() && this.response != null) {
+                        cache.put(key, this.response);
+                    }
+                    super.onClose(status, trailers);
+                }
+            }, this.headers);
+            if (this.requested > 0) {
+                this.delegate.request(this.requested);
+            }
+            this.delegate.sendMessage(this.request);
+            this.delegate.halfClose();
+        }
+
+        @Override
+        public void cancel(@Nullable String message, @Nullable Throwable cause) {
+            if (this.delegate != null) {
+                this.delegate.cancel(message, cause);
+                return;
+            }
+            if (this.listener != null && !this.closed) {
+                this.closed = true;
+                this.listener.onClose(Status.CANCELLED.withDescription(message).withCause(cause), new Metadata());
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate == null ? !this.closed : this.delegate.isReady();
+        }
+
+        @Override
+        public void setMessageCompression(boolean enabled) {
+            // the single request is sent after the caller is done with the call, nothing to compress yet
+        }
+    }
+
+    @Value
+    private static class CacheKey {
+        String target;
+        ByteString request;
+        List<Object> headers;
+    }
+}
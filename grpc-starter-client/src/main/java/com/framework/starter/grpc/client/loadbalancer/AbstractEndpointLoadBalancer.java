@@ -0,0 +1,321 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import com.framework.starter.grpc.client.nameresolver.DiscoveryNameResolver;
+import com.google.common.collect.Lists;
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * 功能概述    keeps one subchannel per resolved endpoint, whatever way the resolver grouped the addresses, and hands
+ * the ready ones to the picker of the subclass. the endpoint weight is read from
+ * {@link DiscoveryNameResolver#LB_WEIGHT_INFO} and kept in a mutable attribute of the subchannel, so a weight
+ * change only rebuilds the picker and never reconnects.
+ * with several connections per target, every endpoint gets that many subchannels, each its own connection, and the
+ * pickers spread the calls over all of them. the subchannels of an endpoint share its weight, env and
+ * {@link EndpointStats}, so its load and health are judged for the endpoint as a whole, not per connection.
+ * with locality awareness, only the endpoints registered with the env of this client are balanced over, as long as
+ * the ready share of them stays at or above the min healthy fraction. below it every ready endpoint is used.
+ * all the methods run in the channel's synchronization context.
+ * className:      AbstractEndpointLoadBalancer
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/12
+ */
+@Slf4j
+public abstract class AbstractEndpointLoadBalancer extends LoadBalancer {
+
+    /**
+     * weight of the endpoints the resolver didn't give one
+     */
+    public static final int DEFAULT_WEIGHT = 10;
+
+    static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO = Attributes.Key.create("state-info");
+    static final Attributes.Key<Ref<Integer>> WEIGHT = Attributes.Key.create("weight");
+    static final Attributes.Key<Ref<String>> ENV = Attributes.Key.create("env");
+    static final Attributes.Key<EndpointStats> STATS = Attributes.Key.create("stats");
+
+    private final Helper helper;
+    /**
+     * endpoint address -> its subchannels, one per connection
+     */
+    private final Map<SocketAddress, List<Subchannel>> subchannels = new HashMap<>();
+    private final int connectionsPerTarget;
+    private ConnectivityState currentState;
+    /**
+     * env of this client, null if locality awareness is off
+     */
+    private final String localEnv;
+    private final double minHealthyFraction;
+
+    protected AbstractEndpointLoadBalancer(Helper helper, GrpcClientProperties properties) {
+        this.helper = requireNonNull(helper, "helper");
+        this.localEnv = properties.isLocalityAware() ? properties.getLocalityEnv() : null;
+        this.minHealthyFraction = properties.getLocalityMinHealthyFraction();
+        this.connectionsPerTarget = Math.max(1, properties.getConnectionsPerTarget());
+    }
+
+    @Override
+    public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+        Map<SocketAddress, Attributes> endpoints = flatten(resolvedAddresses.getAddresses());
+        for (Map.Entry<SocketAddress, Attributes> endpoint : endpoints.entrySet()) {
+            int weight = weightOf(endpoint.getValue());
+            String env = endpoint.getValue().get(DiscoveryNameResolver.ENV_INFO);
+            List<Subchannel> existing = this.subchannels.get(endpoint.getKey());
+            if (existing != null) {
+                // the subchannels of one endpoint share the weight and env holders
+                existing.get(0).getAttributes().get(WEIGHT).value = weight;
+                existing.get(0).getAttributes().get(ENV).value = env;
+                continue;
+            }
+            Ref<Integer> weightRef = new Ref<>(weight);
+            Ref<String> envRef = new Ref<>(env);
+            EndpointStats stats = newStats();
+            List<Subchannel> connections = Lists.newArrayListWithCapacity(this.connectionsPerTarget);
+            for (int i = 0; i < this.connectionsPerTarget; i++) {
+                Subchannel subchannel = this.helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+                        .setAddresses(new EquivalentAddressGroup(endpoint.getKey()))
+                        .setAttributes(Attributes.newBuilder()
+                                .set(STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE)))
+                                .set(WEIGHT, weightRef)
+                                .set(ENV, envRef)
+                                .set(STATS, stats)
+                                .build())
+                        .build());
+                subchannel.start(stateInfo -> processSubchannelState(subchannel, stateInfo));
+                connections.add(subchannel);
+            }
+            this.subchannels.put(endpoint.getKey(), connections);
+            connections.forEach(Subchannel::requestConnection);
+        }
+        List<Subchannel> removed = Lists.newArrayList();
+        this.subchannels.entrySet().removeIf(e -> {
+            if (endpoints.containsKey(e.getKey())) {
+                return false;
+            }
+            removed.addAll(e.getValue());
+            return true;
+        });
+        // update the picker before shutting down the subchannels, so no new calls go to them
+        updateBalancingState();
+        for (Subchannel subchannel : removed) {
+            shutdownSubchannel(subchannel);
+        }
+    }
+
+    /**
+     * @return endpoint address -> attributes of its group, in the resolved order
+     */
+    private static Map<SocketAddress, Attributes> flatten(List<EquivalentAddressGroup> addressGroups) {
+        Map<SocketAddress, Attributes> endpoints = new LinkedHashMap<>();
+        for (EquivalentAddressGroup addressGroup : addressGroups) {
+            for (SocketAddress address : addressGroup.getAddresses()) {
+                endpoints.put(address, addressGroup.getAttributes());
+            }
+        }
+        return endpoints;
+    }
+
+    private static int weightOf(Attributes attributes) {
+        Integer weight = attributes.get(DiscoveryNameResolver.LB_WEIGHT_INFO);
+        return weight == null ? DEFAULT_WEIGHT : Math.max(weight, 0);
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error) {
+        if (this.currentState != READY) {
+            this.helper.updateBalancingState(TRANSIENT_FAILURE, new EmptyPicker(error));
+        }
+    }
+
+    private void processSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
+        List<Subchannel> connections = this.subchannels.get(subchannel.getAddresses().getAddresses().get(0));
+        if (connections == null || !connections.contains(subchannel)) {
+            return;
+        }
+        if (stateInfo.getState() == SHUTDOWN) {
+            return;
+        }
+        if (stateInfo.getState() == IDLE) {
+            subchannel.requestConnection();
+        }
+        Ref<ConnectivityStateInfo> stateRef = subchannel.getAttributes().get(STATE_INFO);
+        if (stateRef.value.getState() == TRANSIENT_FAILURE
+                && (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE)) {
+            // stay in transient failure until the subchannel is ready again, so it isn't picked while reconnecting
+            return;
+        }
+        stateRef.value = stateInfo;
+        updateBalancingState();
+    }
+
+    private void shutdownSubchannel(Subchannel subchannel) {
+        subchannel.shutdown();
+        subchannel.getAttributes().get(STATE_INFO).value = ConnectivityStateInfo.forNonError(SHUTDOWN);
+    }
+
+    @Override
+    public void shutdown() {
+        for (Subchannel subchannel : getSubchannels()) {
+            shutdownSubchannel(subchannel);
+        }
+        this.subchannels.clear();
+    }
+
+    /**
+     * rebuild the picker of the current subchannels, called whenever a state or a weight changed
+     */
+    protected void updateBalancingState() {
+        List<Subchannel> ready = Lists.newArrayList();
+        boolean connecting = false;
+        Status error = null;
+        for (Subchannel subchannel : getSubchannels()) {
+            ConnectivityStateInfo stateInfo = subchannel.getAttributes().get(STATE_INFO).value;
+            if (stateInfo.getState() == READY) {
+                ready.add(subchannel);
+            } else if (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE) {
+                connecting = true;
+            } else if (error == null) {
+                error = stateInfo.getStatus();
+            }
+        }
+        if (!ready.isEmpty()) {
+            updateBalancingState(READY, newReadyPicker(Collections.unmodifiableList(preferLocal(ready))));
+        } else if (this.subchannels.isEmpty()) {
+            updateBalancingState(TRANSIENT_FAILURE, new EmptyPicker(Status.UNAVAILABLE.withDescription("no endpoint resolved")));
+        } else if (connecting || error == null) {
+            updateBalancingState(CONNECTING, new EmptyPicker(Status.OK));
+        } else {
+            updateBalancingState(TRANSIENT_FAILURE, new EmptyPicker(error));
+        }
+    }
+
+    /**
+     * @return the ready endpoints of the local env if there are enough of them, else all the ready endpoints
+     */
+    private List<Subchannel> preferLocal(List<Subchannel> ready) {
+        if (this.localEnv == null) {
+            return ready;
+        }
+        int localTotal = 0;
+        for (Subchannel subchannel : getSubchannels()) {
+            if (this.localEnv.equals(subchannel.getAttributes().get(ENV).value)) {
+                localTotal++;
+            }
+        }
+        if (localTotal == 0) {
+            return ready;
+        }
+        List<Subchannel> local = Lists.newArrayList();
+        for (Subchannel subchannel : ready) {
+            if (this.localEnv.equals(subchannel.getAttributes().get(ENV).value)) {
+                local.add(subchannel);
+            }
+        }
+        if (local.isEmpty() || local.size() < this.minHealthyFraction * localTotal) {
+            // not enough local capacity left, spill over to the other envs
+            return ready;
+        }
+        return local;
+    }
+
+    private void updateBalancingState(ConnectivityState state, SubchannelPicker picker) {
+        this.currentState = state;
+        this.helper.updateBalancingState(state, picker);
+    }
+
+    /**
+     * @param ready the ready subchannels, never empty
+     * @return picker choosing among them
+     */
+    protected abstract SubchannelPicker newReadyPicker(List<Subchannel> ready);
+
+    /**
+     * @return statistics of a new endpoint, shared by all its subchannels
+     */
+    protected EndpointStats newStats() {
+        return new EndpointStats();
+    }
+
+    protected Helper getHelper() {
+        return this.helper;
+    }
+
+    /**
+     * @return all the current subchannels, whatever their state
+     */
+    protected List<Subchannel> getSubchannels() {
+        List<Subchannel> all = Lists.newArrayListWithCapacity(this.subchannels.size() * this.connectionsPerTarget);
+        this.subchannels.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * @return the subchannels of every current endpoint, whatever their state
+     */
+    protected Collection<List<Subchannel>> getEndpoints() {
+        return Collections.unmodifiableCollection(this.subchannels.values());
+    }
+
+    /**
+     * @return current weight of the endpoint, 0 means no traffic
+     */
+    protected static int getWeight(Subchannel subchannel) {
+        return subchannel.getAttributes().get(WEIGHT).value;
+    }
+
+    /**
+     * @return live call statistics of the endpoint
+     */
+    protected static EndpointStats getStats(Subchannel subchannel) {
+        return subchannel.getAttributes().get(STATS);
+    }
+
+    /**
+     * mutable holder kept in the immutable subchannel attributes
+     */
+    static final class Ref<T> {
+        volatile T value;
+
+        Ref(T value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * picker used while no subchannel is ready, buffers the calls or fails them with the error
+     */
+    static final class EmptyPicker extends SubchannelPicker {
+
+        private final Status status;
+
+        EmptyPicker(Status status) {
+            this.status = requireNonNull(status, "status");
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            return this.status.isOk() ? PickResult.withNoResult() : PickResult.withError(this.status);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import io.grpc.ClientStreamTracer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 功能概述    live call statistics of one endpoint, shared by all the pickers built for its subchannel.
+ * a picker returns {@link #tracerFactory()} with the pick result, a call is counted in when its stream is created
+ * and out when the stream closes, which also feeds its latency and outcome into the peak sensitive moving averages.
+ * a pick that never gets a stream, like a call cancelled while buffered or re-picked after the transport went
+ * away, is never counted.
+ * className:      EndpointStats
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/13
+ */
+public class EndpointStats {
+
+    /**
+     * default decay time of the moving averages
+     */
+    public static final long DEFAULT_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * calls in flight of all the endpoints of a load balancer, null if not kept
+     */
+    private final AtomicInteger totalInFlight;
+    private final long decayNanos;
+
+    /**
+     * peak ewma of the call latency in nanos, 0 before the first call
+     */
+    private volatile double latency;
+    /**
+     * ewma of the failed call ratio
+     */
+    private volatile double errorRate;
+    private long lastUpdate = System.nanoTime();
+    /**
+     * calls closed since the last {@link #drainSamples()}
+     */
+    private int samples;
+
+    /**
+     * System.nanoTime the ejection ends at, only read and written by the load balancer
+     */
+    long ejectedUntil;
+    boolean ejected;
+    int ejectionCount;
+
+    private final ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.Factory() {
+        @Override
+        public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+            // counted in here, not at the pick, so every call counted in is counted out by streamClosed
+            inFlight.incrementAndGet();
+            if (totalInFlight != null) {
+                totalInFlight.incrementAndGet();
+            }
+            final long start = System.nanoTime();
+            return new ClientStreamTracer() {
+                @Override
+                public void streamClosed(Status status) {
+                    onClose(System.nanoTime() - start, isFailure(status));
+                }
+            };
+        }
+    };
+
+    public EndpointStats() {
+        this(DEFAULT_DECAY_NANOS);
+    }
+
+    /**
+     * @param decayNanos time after which an observation weighs 1/e in the moving averages
+     */
+    public EndpointStats(long decayNanos) {
+        this(decayNanos, null);
+    }
+
+    /**
+     * @param decayNanos    time after which an observation weighs 1/e in the moving averages
+     * @param totalInFlight counter of the calls in flight of all the endpoints, kept along with the one of this one
+     */
+    EndpointStats(long decayNanos, AtomicInteger totalInFlight) {
+        this.decayNanos = decayNanos;
+        this.totalInFlight = totalInFlight;
+    }
+
+    /**
+     * @return calls with a stream open
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    private synchronized void onClose(long latencyNanos, boolean failed) {
+        this.inFlight.decrementAndGet();
+        if (this.totalInFlight != null) {
+            this.totalInFlight.decrementAndGet();
+        }
+        long now = System.nanoTime();
+        double w = Math.exp(-(now - this.lastUpdate) / (double) this.decayNanos);
+        this.lastUpdate = now;
+        if (latencyNanos > this.latency) {
+            // jump to a peak immediately, decay from it slowly
+            this.latency = latencyNanos;
+        } else {
+            this.latency = this.latency * w + latencyNanos * (1 - w);
+        }
+        this.errorRate = this.errorRate * w + (failed ? 1 - w : 0);
+        this.samples++;
+    }
+
+    /**
+     * @return peak ewma of the call latency in nanos, 0 before the first call
+     */
+    public double getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * @return ewma of the failed call ratio, from 0 to 1
+     */
+    public double getErrorRate() {
+        return this.errorRate;
+    }
+
+    /**
+     * @return calls closed since the last call of this method
+     */
+    synchronized int drainSamples() {
+        int drained = this.samples;
+        this.samples = 0;
+        return drained;
+    }
+
+    /**
+     * forget the history, so a re-admitted endpoint is judged by its new calls only
+     */
+    synchronized void reset() {
+        this.latency = 0;
+        this.errorRate = 0;
+        this.samples = 0;
+        this.lastUpdate = System.nanoTime();
+    }
+
+    public ClientStreamTracer.Factory tracerFactory() {
+        return this.tracerFactory;
+    }
+
+    /**
+     * only the failures that tell about the endpoint health, not the application errors
+     */
+    private static boolean isFailure(Status status) {
+        switch (status.getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case INTERNAL:
+            case UNKNOWN:
+            case RESOURCE_EXHAUSTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.LoadBalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 功能概述    power of two choices: every pick draws two random ready endpoints and takes the one with fewer calls in
+ * flight, optionally relative to its weight. slow endpoints accumulate calls and get picked less, without the
+ * cost of scanning all the endpoints.
+ * className:      LeastRequestLoadBalancer
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/13
+ */
+public class LeastRequestLoadBalancer extends AbstractEndpointLoadBalancer {
+
+    private final boolean weighted;
+
+    public LeastRequestLoadBalancer(Helper helper, GrpcClientProperties properties) {
+        super(helper, properties);
+        this.weighted = properties.isLeastRequestWeighted();
+    }
+
+    @Override
+    protected SubchannelPicker newReadyPicker(List<Subchannel> ready) {
+        return new LeastRequestPicker(ready, this.weighted);
+    }
+
+    static final class LeastRequestPicker extends LoadBalancer.SubchannelPicker {
+
+        private final List<Subchannel> subchannels;
+        private final boolean weighted;
+
+        LeastRequestPicker(List<Subchannel> subchannels, boolean weighted) {
+            this.subchannels = subchannels;
+            this.weighted = weighted;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            Subchannel picked = this.subchannels.get(0);
+            int size = this.subchannels.size();
+            if (size > 1) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int first = random.nextInt(size);
+                // a second index distinct from the first
+                int second = (first + 1 + random.nextInt(size - 1)) % size;
+                picked = lessLoaded(this.subchannels.get(first), this.subchannels.get(second));
+            }
+            return PickResult.withSubchannel(picked, getStats(picked).tracerFactory());
+        }
+
+        private Subchannel lessLoaded(Subchannel a, Subchannel b) {
+            long loadA = getStats(a).getInFlight() + 1;
+            long loadB = getStats(b).getInFlight() + 1;
+            if (this.weighted) {
+                // compare loadA / weightA with loadB / weightB, an endpoint of weight 0 only wins against another one
+                int weightA = getWeight(a);
+                int weightB = getWeight(b);
+                if (weightA == 0 || weightB == 0) {
+                    if (weightA != weightB) {
+                        return weightA == 0 ? b : a;
+                    }
+                } else {
+                    loadA *= weightB;
+                    loadB *= weightA;
+                }
+            }
+            return loadA <= loadB ? a : b;
+        }
+    }
+}
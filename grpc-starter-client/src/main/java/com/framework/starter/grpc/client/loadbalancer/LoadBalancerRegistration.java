@@ -0,0 +1,65 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.collect.ImmutableList;
+
+import io.grpc.LoadBalancerProvider;
+import io.grpc.LoadBalancerRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 功能概述    manages the registration and de-registration of Spring managed load balancers,
+ * the counterpart of {@link com.framework.starter.grpc.client.nameresolver.NameResolverRegistration}.
+ * className:      LoadBalancerRegistration
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/12
+ */
+@Slf4j
+public class LoadBalancerRegistration implements DisposableBean {
+
+    private final List<LoadBalancerRegistry> registries = new ArrayList<>(1);
+    private final List<LoadBalancerProvider> providers;
+
+    /**
+     * Creates a new LoadBalancerRegistration with the given list of providers.
+     *
+     * @param providers The providers that should be managed.
+     */
+    public LoadBalancerRegistration(List<LoadBalancerProvider> providers) {
+        this.providers = providers == null ? ImmutableList.of() : ImmutableList.copyOf(providers);
+    }
+
+    /**
+     * Register all LoadBalancerProviders in the given registry and store a reference to it for later de-registration.
+     *
+     * @param registry The registry to add the providers to.
+     */
+    public void register(LoadBalancerRegistry registry) {
+        this.registries.add(registry);
+        for (LoadBalancerProvider provider : this.providers) {
+            try {
+                registry.register(provider);
+                log.debug("{} is available -> Added to the LoadBalancerRegistry", provider);
+            } catch (IllegalArgumentException e) {
+                log.debug("{} is not available -> Not added to the LoadBalancerRegistry", provider);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (LoadBalancerRegistry registry : this.registries) {
+            for (LoadBalancerProvider provider : this.providers) {
+                registry.deregister(provider);
+                log.debug("{} was removed from the LoadBalancerRegistry", provider);
+            }
+        }
+        this.registries.clear();
+    }
+
+}
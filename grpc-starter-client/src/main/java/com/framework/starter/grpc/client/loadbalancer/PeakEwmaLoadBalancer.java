@@ -0,0 +1,193 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import com.google.common.collect.Lists;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.SynchronizationContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static io.grpc.ConnectivityState.READY;
+
+/**
+ * 功能概述    latency aware balancing: every pick draws two random ready endpoints and takes the one of the lower
+ * cost, the peak ewma latency times the calls in flight plus one. a slow endpoint is avoided as soon as one of
+ * its calls is slow, and recovers as its latency decays.
+ * every second the endpoints are checked, the ones whose error rate or latency crosses the thresholds are ejected
+ * for the ejection time, longer for the ones ejected repeatedly, and re-admitted with a clean history.
+ * className:      PeakEwmaLoadBalancer
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/14
+ */
+@Slf4j
+public class PeakEwmaLoadBalancer extends AbstractEndpointLoadBalancer {
+
+    private static final long EVALUATION_INTERVAL_SECONDS = 1;
+    /**
+     * calls an endpoint must have closed in one interval to be judged
+     */
+    private static final int MIN_SAMPLES = 5;
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+    /**
+     * cost of an endpoint with calls in flight but no latency observed yet
+     */
+    private static final double PENALTY = TimeUnit.SECONDS.toNanos(1);
+
+    private final GrpcClientProperties properties;
+    private SynchronizationContext.ScheduledHandle evaluation;
+
+    public PeakEwmaLoadBalancer(Helper helper, GrpcClientProperties properties) {
+        super(helper, properties);
+        this.properties = properties;
+    }
+
+    @Override
+    public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+        super.handleResolvedAddresses(resolvedAddresses);
+        if (this.evaluation == null) {
+            scheduleEvaluation();
+        }
+    }
+
+    @Override
+    protected EndpointStats newStats() {
+        return new EndpointStats(this.properties.getPeakEwmaDecayTime().toNanos());
+    }
+
+    private void scheduleEvaluation() {
+        this.evaluation = getHelper().getSynchronizationContext().schedule(this::evaluate,
+                EVALUATION_INTERVAL_SECONDS, TimeUnit.SECONDS, getHelper().getScheduledExecutorService());
+    }
+
+    private void evaluate() {
+        long now = System.nanoTime();
+        // judged by endpoint, its connections share the stats
+        int readyCount = 0;
+        int ejectedCount = 0;
+        for (List<Subchannel> connections : getEndpoints()) {
+            if (isReady(connections)) {
+                readyCount++;
+            }
+            if (getStats(connections.get(0)).ejected) {
+                ejectedCount++;
+            }
+        }
+        boolean changed = false;
+        for (List<Subchannel> connections : getEndpoints()) {
+            EquivalentAddressGroup addresses = connections.get(0).getAddresses();
+            EndpointStats stats = getStats(connections.get(0));
+            int samples = stats.drainSamples();
+            if (stats.ejected) {
+                if (now - stats.ejectedUntil >= 0) {
+                    log.info("re-admit endpoint {}", addresses);
+                    stats.ejected = false;
+                    stats.reset();
+                    ejectedCount--;
+                    changed = true;
+                }
+                continue;
+            }
+            if (!isOutlier(stats, samples)) {
+                if (samples > 0 && stats.ejectionCount > 0) {
+                    // a healthy interval shortens the next ejection
+                    stats.ejectionCount--;
+                }
+                continue;
+            }
+            if ((ejectedCount + 1) * 100 > readyCount * this.properties.getOutlierMaxEjectionPercent()) {
+                continue;
+            }
+            stats.ejectionCount = Math.min(stats.ejectionCount + 1, MAX_EJECTION_MULTIPLIER);
+            stats.ejected = true;
+            stats.ejectedUntil = now + this.properties.getOutlierEjectionTime().toNanos() * stats.ejectionCount;
+            ejectedCount++;
+            changed = true;
+            log.warn("eject endpoint {} for {}s, latency:{}ms, error rate:{}", addresses,
+                    this.properties.getOutlierEjectionTime().getSeconds() * stats.ejectionCount,
+                    (long) (stats.getLatency() / 1_000_000), stats.getErrorRate());
+        }
+        if (changed) {
+            updateBalancingState();
+        }
+        scheduleEvaluation();
+    }
+
+    private static boolean isReady(List<Subchannel> connections) {
+        for (Subchannel subchannel : connections) {
+            if (subchannel.getAttributes().get(STATE_INFO).value.getState() == READY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOutlier(EndpointStats stats, int samples) {
+        if (samples < MIN_SAMPLES) {
+            return false;
+        }
+        if (stats.getErrorRate() > this.properties.getOutlierErrorRate()) {
+            return true;
+        }
+        long latencyThreshold = this.properties.getOutlierLatency().toNanos();
+        return latencyThreshold > 0 && stats.getLatency() > latencyThreshold;
+    }
+
+    @Override
+    protected SubchannelPicker newReadyPicker(List<Subchannel> ready) {
+        List<Subchannel> admitted = Lists.newArrayListWithCapacity(ready.size());
+        for (Subchannel subchannel : ready) {
+            if (!getStats(subchannel).ejected) {
+                admitted.add(subchannel);
+            }
+        }
+        return new PeakEwmaPicker(admitted.isEmpty() ? ready : admitted);
+    }
+
+    @Override
+    public void shutdown() {
+        if (this.evaluation != null) {
+            this.evaluation.cancel();
+            this.evaluation = null;
+        }
+        super.shutdown();
+    }
+
+    static final class PeakEwmaPicker extends LoadBalancer.SubchannelPicker {
+
+        private final List<Subchannel> subchannels;
+
+        PeakEwmaPicker(List<Subchannel> subchannels) {
+            this.subchannels = subchannels;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            Subchannel picked = this.subchannels.get(0);
+            int size = this.subchannels.size();
+            if (size > 1) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int first = random.nextInt(size);
+                int second = (first + 1 + random.nextInt(size - 1)) % size;
+                Subchannel a = this.subchannels.get(first);
+                Subchannel b = this.subchannels.get(second);
+                picked = cost(a) <= cost(b) ? a : b;
+            }
+            return PickResult.withSubchannel(picked, getStats(picked).tracerFactory());
+        }
+
+        private static double cost(Subchannel subchannel) {
+            EndpointStats stats = getStats(subchannel);
+            int inFlight = stats.getInFlight();
+            double latency = stats.getLatency();
+            if (latency == 0) {
+                return inFlight == 0 ? 0 : PENALTY + inFlight;
+            }
+            return latency * (inFlight + 1);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.grpc.CallOptions;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 功能概述    consistent hashing: every endpoint owns points on a hash ring, in proportion to its weight, and a call
+ * goes to the owner of the first point at or after the hash of its key. an endpoint joining or leaving only moves
+ * the keys of its own points, about 1/N of them. the ring is kept sorted between the pickers, only the points of
+ * the endpoints that joined, left or changed their weight are merged in or filtered out, and a picker update that
+ * doesn't change the ready endpoints reuses the ring as is.
+ * the ring is made of endpoints, not connections, a call goes to a random ready connection of the endpoint picked.
+ * the key is read from {@link #HASH_KEY} of the call options, or else from the configured header. calls without a
+ * key go to a random endpoint.
+ * with a load factor, an endpoint already carrying more than load factor times the average calls in flight is
+ * skipped for the next one on the ring.
+ * className:      RingHashLoadBalancer
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/15
+ */
+public class RingHashLoadBalancer extends AbstractEndpointLoadBalancer {
+
+    /**
+     * hash key of the call, takes precedence over the header
+     */
+    public static final CallOptions.Key<String> HASH_KEY = CallOptions.Key.create("hash-key");
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final long[] NO_POINTS = new long[0];
+    private static final int[] NO_OWNERS = new int[0];
+
+    private final Metadata.Key<?> header;
+    private final int virtualNodes;
+    private final double loadFactor;
+    /**
+     * calls in flight of all the endpoints, kept by their stats
+     */
+    private final AtomicInteger totalInFlight = new AtomicInteger();
+    /**
+     * endpoint on the ring -> its points, sorted
+     */
+    private final Map<SocketAddress, long[]> members = new HashMap<>();
+    /**
+     * endpoint on the ring -> its slot, the owner id of its points
+     */
+    private final Map<SocketAddress, Integer> slots = new HashMap<>();
+    private final BitSet usedSlots = new BitSet();
+    /**
+     * hashes of the points, sorted, and the slot owning each of them. never changed once handed to a picker,
+     * a change builds new arrays
+     */
+    private long[] ring = NO_POINTS;
+    private int[] owners = NO_OWNERS;
+
+    public RingHashLoadBalancer(Helper helper, GrpcClientProperties properties) {
+        super(helper, properties);
+        String headerName = properties.getRingHashHeader();
+        // a -bin header carries bytes, its key is hashed as they are
+        this.header = headerName.endsWith(Metadata.BINARY_HEADER_SUFFIX)
+                ? Metadata.Key.of(headerName, Metadata.BINARY_BYTE_MARSHALLER)
+                : Metadata.Key.of(headerName, Metadata.ASCII_STRING_MARSHALLER);
+        this.virtualNodes = properties.getRingHashVirtualNodes();
+        this.loadFactor = properties.getRingHashLoadFactor();
+    }
+
+    @Override
+    protected EndpointStats newStats() {
+        return new EndpointStats(EndpointStats.DEFAULT_DECAY_NANOS, this.totalInFlight);
+    }
+
+    @Override
+    protected SubchannelPicker newReadyPicker(List<Subchannel> ready) {
+        Map<SocketAddress, List<Subchannel>> endpoints = new LinkedHashMap<>();
+        for (Subchannel subchannel : ready) {
+            endpoints.computeIfAbsent(address(subchannel), k -> Lists.newArrayList()).add(subchannel);
+        }
+        updateRing(endpoints);
+        Subchannel[][] connections = new Subchannel[this.usedSlots.length()][];
+        Subchannel[][] dense = new Subchannel[endpoints.size()][];
+        int ringEndpoints = 0;
+        int i = 0;
+        for (Map.Entry<SocketAddress, List<Subchannel>> endpoint : endpoints.entrySet()) {
+            Subchannel[] endpointConnections = endpoint.getValue().toArray(new Subchannel[0]);
+            connections[this.slots.get(endpoint.getKey())] = endpointConnections;
+            dense[i++] = endpointConnections;
+            if (this.members.get(endpoint.getKey()).length > 0) {
+                ringEndpoints++;
+            }
+        }
+        return new RingHashPicker(dense, connections, this.ring, this.owners, Math.max(1, ringEndpoints),
+                this.header, this.loadFactor, this.totalInFlight);
+    }
+
+    /**
+     * bring the ring in line with the ready endpoints, touching only the points of the ones that changed
+     */
+    private void updateRing(Map<SocketAddress, List<Subchannel>> endpoints) {
+        BitSet removedSlots = new BitSet();
+        members.entrySet().removeIf(member -> {
+            List<Subchannel> connections = endpoints.get(member.getKey());
+            if (connections != null && pointCount(getWeight(connections.get(0))) == member.getValue().length) {
+                return false;
+            }
+            int slot = this.slots.remove(member.getKey());
+            removedSlots.set(slot);
+            this.usedSlots.clear(slot);
+            return true;
+        });
+        if (!removedSlots.isEmpty()) {
+            removePoints(removedSlots);
+        }
+        for (Map.Entry<SocketAddress, List<Subchannel>> endpoint : endpoints.entrySet()) {
+            if (this.members.containsKey(endpoint.getKey())) {
+                continue;
+            }
+            int slot = this.usedSlots.nextClearBit(0);
+            this.usedSlots.set(slot);
+            this.slots.put(endpoint.getKey(), slot);
+            long[] points = points(endpoint.getKey(), getWeight(endpoint.getValue().get(0)));
+            this.members.put(endpoint.getKey(), points);
+            if (points.length > 0) {
+                mergePoints(points, slot);
+            }
+        }
+    }
+
+    private void removePoints(BitSet removedSlots) {
+        int kept = 0;
+        for (int owner : this.owners) {
+            if (!removedSlots.get(owner)) {
+                kept++;
+            }
+        }
+        long[] newRing = new long[kept];
+        int[] newOwners = new int[kept];
+        int n = 0;
+        for (int i = 0; i < this.ring.length; i++) {
+            if (!removedSlots.get(this.owners[i])) {
+                newRing[n] = this.ring[i];
+                newOwners[n++] = this.owners[i];
+            }
+        }
+        this.ring = newRing;
+        this.owners = newOwners;
+    }
+
+    /**
+     * @param points sorted points of one endpoint
+     */
+    private void mergePoints(long[] points, int slot) {
+        long[] newRing = new long[this.ring.length + points.length];
+        int[] newOwners = new int[newRing.length];
+        int i = 0;
+        int j = 0;
+        for (int n = 0; n < newRing.length; n++) {
+            if (j == points.length || (i < this.ring.length && this.ring[i] <= points[j])) {
+                newRing[n] = this.ring[i];
+                newOwners[n] = this.owners[i++];
+            } else {
+                newRing[n] = points[j++];
+                newOwners[n] = slot;
+            }
+        }
+        this.ring = newRing;
+        this.owners = newOwners;
+    }
+
+    private int pointCount(int weight) {
+        return weight == 0 ? 0 : Math.max(1, (int) ((long) this.virtualNodes * weight / DEFAULT_WEIGHT));
+    }
+
+    /**
+     * @return the sorted points of the endpoint
+     */
+    private long[] points(SocketAddress address, int weight) {
+        long[] hashes = new long[pointCount(weight)];
+        String name = address.toString();
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = HASH_FUNCTION.hashString(name + "_" + i, StandardCharsets.UTF_8).asLong();
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    private static SocketAddress address(Subchannel subchannel) {
+        return subchannel.getAddresses().getAddresses().get(0);
+    }
+
+    static final class RingHashPicker extends LoadBalancer.SubchannelPicker {
+
+        /**
+         * the ready connections of every endpoint
+         */
+        private final Subchannel[][] endpoints;
+        /**
+         * slot -> the ready connections of its endpoint
+         */
+        private final Subchannel[][] connections;
+        private final long[] ring;
+        private final int[] owners;
+        /**
+         * endpoints with points on the ring
+         */
+        private final int ringEndpoints;
+        private final Metadata.Key<?> header;
+        private final double loadFactor;
+        private final AtomicInteger totalInFlight;
+
+        RingHashPicker(Subchannel[][] endpoints, Subchannel[][] connections, long[] ring, int[] owners,
+                       int ringEndpoints, Metadata.Key<?> header, double loadFactor, AtomicInteger totalInFlight) {
+            this.endpoints = endpoints;
+            this.connections = connections;
+            this.ring = ring;
+            this.owners = owners;
+            this.ringEndpoints = ringEndpoints;
+            this.header = header;
+            this.loadFactor = loadFactor;
+            this.totalInFlight = totalInFlight;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            Object key = args.getCallOptions().getOption(HASH_KEY);
+            if (key == null) {
+                key = args.getHeaders().get(this.header);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Subchannel[] endpoint;
+            if (key == null || this.ring.length == 0) {
+                endpoint = this.endpoints[random.nextInt(this.endpoints.length)];
+            } else if (key instanceof byte[]) {
+                endpoint = pick(HASH_FUNCTION.hashBytes((byte[]) key).asLong());
+            } else {
+                endpoint = pick(HASH_FUNCTION.hashString((String) key, StandardCharsets.UTF_8).asLong());
+            }
+            Subchannel picked = endpoint.length == 1 ? endpoint[0] : endpoint[random.nextInt(endpoint.length)];
+            return PickResult.withSubchannel(picked, getStats(picked).tracerFactory());
+        }
+
+        /**
+         * @return the ready connections of the endpoint owning the hash
+         */
+        private Subchannel[] pick(long hash) {
+            int index = Arrays.binarySearch(this.ring, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (index == this.ring.length) {
+                index = 0;
+            }
+            Subchannel[] first = this.connections[this.owners[index]];
+            if (this.loadFactor <= 0) {
+                return first;
+            }
+            double maxLoad = Math.ceil(this.loadFactor * (this.totalInFlight.get() + 1) / this.ringEndpoints);
+            // walk the ring to the first endpoint under the bound, at most once around it. with a load factor above
+            // 1 some endpoint is always under the bound, so the walk usually ends within a few points
+            int previous = -1;
+            for (int i = 0; i < this.ring.length; i++) {
+                int owner = this.owners[(index + i) % this.ring.length];
+                if (owner == previous) {
+                    continue;
+                }
+                previous = owner;
+                Subchannel[] endpoint = this.connections[owner];
+                if (getStats(endpoint[0]).getInFlight() + 1 <= maxLoad) {
+                    return endpoint;
+                }
+            }
+            return first;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+
+/**
+ * 功能概述    provides the {@link RingHashLoadBalancer} under the policy name {@value #POLICY_NAME}
+ * className:      RingHashLoadBalancerProvider
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/15
+ */
+public class RingHashLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "ring_hash";
+
+    private final GrpcClientProperties properties;
+
+    public RingHashLoadBalancerProvider(GrpcClientProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        return new RingHashLoadBalancer(helper, this.properties);
+    }
+}
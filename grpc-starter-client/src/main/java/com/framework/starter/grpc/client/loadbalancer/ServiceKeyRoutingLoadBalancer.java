@@ -0,0 +1,344 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.nameresolver.DiscoveryNameResolver;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.Status;
+import io.grpc.util.ForwardingLoadBalancerHelper;
+import io.grpc.util.ForwardingSubchannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.SocketAddress;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * 功能概述    load balancer of the channel shared by all the service keys. the addresses are grouped by the
+ * {@link DiscoveryNameResolver#SERVICE_KEY_INFO} they were resolved for, every key is balanced by its own child load
+ * balancer of the configured policy, and a call is routed to the child of the {@link #SERVICE_KEY} in its call
+ * options.
+ * the children don't own their subchannels: all the children connecting the same address share one subchannel per
+ * connection, which is shut down when the last of them lets it go. so the keys served by the same process are
+ * multiplexed over the same connections.
+ * all the methods run in the channel's synchronization context.
+ * className:      ServiceKeyRoutingLoadBalancer
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/19
+ */
+@Slf4j
+public class ServiceKeyRoutingLoadBalancer extends LoadBalancer {
+
+    /**
+     * service key a call over the shared channel is routed by
+     */
+    public static final CallOptions.Key<String> SERVICE_KEY = CallOptions.Key.create("service-key");
+
+    private final Helper helper;
+    private final LoadBalancerProvider childProvider;
+    /**
+     * service key -> its child load balancer
+     */
+    private final Map<String, Child> children = new LinkedHashMap<>();
+    /**
+     * address, connection slot -> the subchannel shared by the children
+     */
+    private final Table<SocketAddress, Integer, SharedSubchannel> subchannels = HashBasedTable.create();
+    private Set<String> keys = Collections.emptySet();
+
+    public ServiceKeyRoutingLoadBalancer(Helper helper, LoadBalancerProvider childProvider) {
+        this.helper = requireNonNull(helper, "helper");
+        this.childProvider = requireNonNull(childProvider, "childProvider");
+    }
+
+    @Override
+    public boolean canHandleEmptyAddressListFromNameResolution() {
+        // the keys without endpoints are told apart from the unknown keys by the resolution attributes
+        return true;
+    }
+
+    @Override
+    public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+        Map<String, List<EquivalentAddressGroup>> addressesByKey = new HashMap<>();
+        for (EquivalentAddressGroup addressGroup : resolvedAddresses.getAddresses()) {
+            String key = addressGroup.getAttributes().get(DiscoveryNameResolver.SERVICE_KEY_INFO);
+            if (key != null) {
+                addressesByKey.computeIfAbsent(key, k -> Lists.newArrayList()).add(addressGroup);
+            }
+        }
+        Set<String> resolvedKeys = resolvedAddresses.getAttributes().get(DiscoveryNameResolver.SERVICE_KEYS_INFO);
+        this.keys = resolvedKeys == null ? ImmutableSet.copyOf(addressesByKey.keySet()) : resolvedKeys;
+        for (Iterator<Map.Entry<String, Child>> it = this.children.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Child> entry = it.next();
+            if (!this.keys.contains(entry.getKey())) {
+                it.remove();
+                entry.getValue().loadBalancer.shutdown();
+            }
+        }
+        for (String key : this.keys) {
+            List<EquivalentAddressGroup> addresses = addressesByKey.get(key);
+            Child child = this.children.get(key);
+            if (addresses == null) {
+                // like a channel of its own given no address, keeps serving the key while its endpoints are ready
+                if (child != null) {
+                    child.loadBalancer.handleNameResolutionError(
+                            Status.UNAVAILABLE.withDescription("no endpoint resolved for " + key));
+                }
+                continue;
+            }
+            if (child == null) {
+                child = new Child(key);
+                this.children.put(key, child);
+            }
+            child.loadBalancer.handleResolvedAddresses(ResolvedAddresses.newBuilder()
+                    .setAddresses(addresses)
+                    .setAttributes(resolvedAddresses.getAttributes())
+                    .setLoadBalancingPolicyConfig(resolvedAddresses.getLoadBalancingPolicyConfig())
+                    .build());
+        }
+        updateBalancingState();
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error) {
+        if (this.children.isEmpty()) {
+            this.helper.updateBalancingState(TRANSIENT_FAILURE, new AbstractEndpointLoadBalancer.EmptyPicker(error));
+            return;
+        }
+        for (Child child : this.children.values()) {
+            child.loadBalancer.handleNameResolutionError(error);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (Child child : this.children.values()) {
+            child.loadBalancer.shutdown();
+        }
+        this.children.clear();
+        // normally released by the children already
+        for (SharedSubchannel shared : this.subchannels.values()) {
+            shared.subchannel.shutdown();
+        }
+        this.subchannels.clear();
+    }
+
+    /**
+     * aggregate the states of the children, and route by the key to their pickers
+     */
+    private void updateBalancingState() {
+        boolean ready = false;
+        boolean connecting = false;
+        ImmutableMap.Builder<String, SubchannelPicker> pickers = ImmutableMap.builder();
+        for (Map.Entry<String, Child> entry : this.children.entrySet()) {
+            Child child = entry.getValue();
+            pickers.put(entry.getKey(), child.picker);
+            if (child.state == READY) {
+                ready = true;
+            } else if (child.state == CONNECTING || child.state == IDLE) {
+                connecting = true;
+            }
+        }
+        ConnectivityState state = ready ? READY : connecting ? CONNECTING : TRANSIENT_FAILURE;
+        this.helper.updateBalancingState(state, new RoutingPicker(pickers.build(), this.keys));
+    }
+
+    /**
+     * child load balancer of a service key and its latest state
+     */
+    private final class Child extends ForwardingLoadBalancerHelper {
+
+        private final String key;
+        private final LoadBalancer loadBalancer;
+        /**
+         * address -> connection slots this child holds
+         */
+        private final Map<SocketAddress, BitSet> slots = new HashMap<>();
+        private ConnectivityState state = CONNECTING;
+        private SubchannelPicker picker = new AbstractEndpointLoadBalancer.EmptyPicker(Status.OK);
+
+        Child(String key) {
+            this.key = key;
+            this.loadBalancer = childProvider.newLoadBalancer(this);
+        }
+
+        @Override
+        protected Helper delegate() {
+            return helper;
+        }
+
+        @Override
+        public Subchannel createSubchannel(CreateSubchannelArgs args) {
+            SocketAddress address = args.getAddresses().getAddresses().get(0);
+            BitSet held = this.slots.computeIfAbsent(address, a -> new BitSet());
+            int slot = held.nextClearBit(0);
+            held.set(slot);
+            SharedSubchannel shared = subchannels.get(address, slot);
+            if (shared == null) {
+                shared = new SharedSubchannel(address, slot, helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+                        .setAddresses(args.getAddresses())
+                        .build()));
+                subchannels.put(address, slot, shared);
+            }
+            return new ChildSubchannel(this, shared, args.getAttributes());
+        }
+
+        @Override
+        public void updateBalancingState(ConnectivityState newState, SubchannelPicker newPicker) {
+            this.state = newState;
+            this.picker = newPicker;
+            if (children.get(this.key) == this) {
+                ServiceKeyRoutingLoadBalancer.this.updateBalancingState();
+            }
+        }
+
+        void release(SocketAddress address, int slot) {
+            BitSet held = this.slots.get(address);
+            if (held != null) {
+                held.clear(slot);
+                if (held.isEmpty()) {
+                    this.slots.remove(address);
+                }
+            }
+        }
+    }
+
+    /**
+     * subchannel connecting an address, its state is fanned out to every child using it
+     */
+    private final class SharedSubchannel {
+
+        private final SocketAddress address;
+        private final int slot;
+        private final Subchannel subchannel;
+        private final Set<ChildSubchannel> users = new LinkedHashSet<>();
+        private ConnectivityStateInfo stateInfo = ConnectivityStateInfo.forNonError(IDLE);
+
+        SharedSubchannel(SocketAddress address, int slot, Subchannel subchannel) {
+            this.address = address;
+            this.slot = slot;
+            this.subchannel = subchannel;
+            subchannel.start(this::onState);
+        }
+
+        private void onState(ConnectivityStateInfo newStateInfo) {
+            this.stateInfo = newStateInfo;
+            for (ChildSubchannel user : Lists.newArrayList(this.users)) {
+                user.listener.onSubchannelState(newStateInfo);
+            }
+        }
+
+        void release(ChildSubchannel user) {
+            if (this.users.remove(user) && this.users.isEmpty()) {
+                subchannels.remove(this.address, this.slot);
+                this.subchannel.shutdown();
+            }
+        }
+    }
+
+    /**
+     * the view of a shared subchannel handed to a child, with the attributes of that child
+     */
+    private final class ChildSubchannel extends ForwardingSubchannel {
+
+        private final Child owner;
+        private final SharedSubchannel shared;
+        private final Attributes attributes;
+        private SubchannelStateListener listener;
+        private boolean shutdown;
+
+        ChildSubchannel(Child owner, SharedSubchannel shared, Attributes attributes) {
+            this.owner = owner;
+            this.shared = shared;
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected Subchannel delegate() {
+            return this.shared.subchannel;
+        }
+
+        @Override
+        public void start(SubchannelStateListener listener) {
+            this.listener = requireNonNull(listener, "listener");
+            this.shared.users.add(this);
+            if (this.shared.stateInfo.getState() != IDLE) {
+                // already connecting or connected for another child, tell this one once it has taken the subchannel
+                helper.getSynchronizationContext().execute(() -> {
+                    if (!this.shutdown) {
+                        listener.onSubchannelState(this.shared.stateInfo);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            if (this.shutdown) {
+                return;
+            }
+            this.shutdown = true;
+            this.owner.release(this.shared.address, this.shared.slot);
+            this.shared.release(this);
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return this.attributes;
+        }
+    }
+
+    /**
+     * picks with the picker of the child of the call's service key
+     */
+    static final class RoutingPicker extends SubchannelPicker {
+
+        private final Map<String, SubchannelPicker> pickers;
+        private final Set<String> keys;
+
+        RoutingPicker(Map<String, SubchannelPicker> pickers, Set<String> keys) {
+            this.pickers = pickers;
+            this.keys = keys;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            String key = args.getCallOptions().getOption(SERVICE_KEY);
+            if (key == null) {
+                return PickResult.withError(Status.INTERNAL.withDescription("no service key in the call options"));
+            }
+            SubchannelPicker picker = this.pickers.get(key);
+            if (picker != null) {
+                return picker.pickSubchannel(args);
+            }
+            if (this.keys.contains(key)) {
+                return PickResult.withError(Status.UNAVAILABLE.withDescription("no endpoint resolved for " + key));
+            }
+            // not resolved yet, buffer until it is
+            return PickResult.withNoResult();
+        }
+    }
+}
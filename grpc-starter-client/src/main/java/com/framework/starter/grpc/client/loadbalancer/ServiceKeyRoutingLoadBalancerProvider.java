@@ -0,0 +1,51 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.LoadBalancerRegistry;
+
+/**
+ * 功能概述    provides the {@link ServiceKeyRoutingLoadBalancer} under the policy name {@value #POLICY_NAME}, its
+ * children balance by {@link GrpcClientProperties#getDefaultLoadBalancingPolicy()}
+ * className:      ServiceKeyRoutingLoadBalancerProvider
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/19
+ */
+public class ServiceKeyRoutingLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "service_key_routing";
+
+    private final GrpcClientProperties properties;
+
+    public ServiceKeyRoutingLoadBalancerProvider(GrpcClientProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        String childPolicy = this.properties.getDefaultLoadBalancingPolicy();
+        LoadBalancerProvider childProvider = POLICY_NAME.equals(childPolicy)
+                ? null : LoadBalancerRegistry.getDefaultRegistry().getProvider(childPolicy);
+        if (childProvider == null) {
+            childProvider = new WeightedRoundRobinLoadBalancerProvider(this.properties);
+        }
+        return new ServiceKeyRoutingLoadBalancer(helper, childProvider);
+    }
+}
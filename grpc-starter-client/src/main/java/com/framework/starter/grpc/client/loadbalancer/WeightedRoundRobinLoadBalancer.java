@@ -0,0 +1,70 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.LoadBalancer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 功能概述    smooth weighted round robin over the ready endpoints: every pick adds each endpoint's weight to its
+ * current value, picks the largest and subtracts the total weight from it. an endpoint of weight w out of a total
+ * W gets w of every W picks, spread evenly instead of in bursts.
+ * className:      WeightedRoundRobinLoadBalancer
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/12
+ */
+public class WeightedRoundRobinLoadBalancer extends AbstractEndpointLoadBalancer {
+
+    public WeightedRoundRobinLoadBalancer(Helper helper, GrpcClientProperties properties) {
+        super(helper, properties);
+    }
+
+    @Override
+    protected SubchannelPicker newReadyPicker(List<Subchannel> ready) {
+        return new WeightedRoundRobinPicker(ready);
+    }
+
+    static final class WeightedRoundRobinPicker extends LoadBalancer.SubchannelPicker {
+
+        private final List<Subchannel> subchannels;
+        private final int[] weights;
+        private final int[] currentWeights;
+        private final int totalWeight;
+
+        WeightedRoundRobinPicker(List<Subchannel> subchannels) {
+            this.subchannels = subchannels;
+            this.weights = new int[subchannels.size()];
+            this.currentWeights = new int[subchannels.size()];
+            int total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = getWeight(subchannels.get(i));
+                total += weights[i];
+            }
+            if (total == 0) {
+                // all the weights are 0, spread the calls evenly rather than failing them
+                Arrays.fill(weights, 1);
+                total = weights.length;
+            }
+            this.totalWeight = total;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            return PickResult.withSubchannel(this.subchannels.get(nextIndex()));
+        }
+
+        private synchronized int nextIndex() {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                currentWeights[i] += weights[i];
+                if (currentWeights[i] > currentWeights[best]) {
+                    best = i;
+                }
+            }
+            currentWeights[best] -= totalWeight;
+            return best;
+        }
+    }
+}
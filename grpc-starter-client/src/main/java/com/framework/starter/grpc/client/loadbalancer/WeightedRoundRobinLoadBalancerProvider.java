@@ -0,0 +1,43 @@
+package com.framework.starter.grpc.client.loadbalancer;
+
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+
+/**
+ * 功能概述    provides the {@link WeightedRoundRobinLoadBalancer} under the policy name {@value #POLICY_NAME}
+ * className:      WeightedRoundRobinLoadBalancerProvider
+ * package:        com.framework.starter.grpc.client.loadbalancer
+ * author:         Gavin.Xu
+ * date:           2021/7/12
+ */
+public class WeightedRoundRobinLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "weighted_round_robin";
+
+    private final GrpcClientProperties properties;
+
+    public WeightedRoundRobinLoadBalancerProvider(GrpcClientProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        return new WeightedRoundRobinLoadBalancer(helper, this.properties);
+    }
+}
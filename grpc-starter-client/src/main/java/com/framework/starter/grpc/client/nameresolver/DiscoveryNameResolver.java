@@ -3,24 +3,31 @@ package com.framework.starter.grpc.client.nameresolver;
 import com.framework.starter.discovery.client.DiscoveryClient;
 import com.framework.starter.discovery.enums.Protocol;
 import com.framework.starter.discovery.service.ServiceEntity;
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 import io.grpc.Attributes;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.NameResolver;
+import io.grpc.Status;
 import io.grpc.SynchronizationContext;
-import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.CollectionUtils;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -28,6 +35,16 @@ import static lombok.Lombok.checkNotNull;
 
 /**
  * 功能概述
+ * a resolver either resolves the one service key of its channel, or, for the channel shared by all the service keys,
+ * every key added to it, tagging each address with the key it was resolved for.
+ * the keys are watched through the {@link ServiceWatchRegistry} shared by all the resolvers, and released on
+ * {@link #shutdown()}. {@link #refresh()} re-reads the services, the refreshes asked for in a row are spaced by a
+ * doubling backoff on the shared scheduler.
+ * the first resolution waits for the watches up to the resolve timeout only: past it, or when the lookup without the
+ * watches finds nothing, the listener is told the services are unavailable, and the watches keep retrying in the
+ * background until they publish.
+ * the listener is only given addresses that changed: the groups of the unchanged endpoints are the very instances
+ * published before, and a result equal to the last one isn't published at all.
  * className:      DiscoveryNameResolver
  * package:        com.framework.starter.grpc.client.nameresolver
  * author:         Gavin.Xu
@@ -37,29 +54,101 @@ import static lombok.Lombok.checkNotNull;
 public class DiscoveryNameResolver extends NameResolver {
 
     private String key;
+    /**
+     * the service keys resolved, only the own key unless shared
+     */
+    private final Set<String> keys = new CopyOnWriteArraySet<>();
+    private final boolean shared;
     private DiscoveryClient client;
-    private Listener listener;
+    private final ServiceWatchRegistry watches;
+    private final ScheduledExecutorService scheduler;
+    private volatile Listener listener;
     private final SynchronizationContext syncContext;
     private volatile boolean resolving;
-    private ExecutorService executorService = Executors.newSingleThreadExecutor(new DefaultThreadFactory("discovery-watch-thread", false));
+    private volatile boolean shutdown;
+    private final GrpcClientProperties properties;
+    /**
+     * pending refresh, only accessed in the sync context
+     */
+    private SynchronizationContext.ScheduledHandle refreshHandle;
+    private long refreshBackoffNanos = INITIAL_REFRESH_BACKOFF_NANOS;
+    private long lastRefreshNanos = System.nanoTime();
+    /**
+     * completes once the watches of the keys can be read
+     */
+    private volatile CompletableFuture<Void> watched = CompletableFuture.completedFuture(null);
+    /**
+     * pending end of the wait for the watches, only accessed in the sync context
+     */
+    private SynchronizationContext.ScheduledHandle resolveTimeoutHandle;
+    /**
+     * the listener was given a result or an error, only accessed in the sync context
+     */
+    private boolean resolved;
+    /**
+     * endpoint -> group last published for it, only accessed in the sync context
+     */
+    private Map<String, EquivalentAddressGroup> published = Collections.emptyMap();
+    private Attributes publishedAttributes;
+    private static final long INITIAL_REFRESH_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_REFRESH_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
     public static final Attributes.Key<Integer> LB_WEIGHT_INFO = Attributes.Key.create("lb-weight-info");
+    /**
+     * env the endpoint registered with, absent if none
+     */
+    public static final Attributes.Key<String> ENV_INFO = Attributes.Key.create("env-info");
+    /**
+     * service key the endpoint was resolved for, only set by a shared resolver
+     */
+    public static final Attributes.Key<String> SERVICE_KEY_INFO = Attributes.Key.create("service-key-info");
+    /**
+     * all the service keys of a shared resolver, set on the resolution result even when some resolved no endpoint
+     */
+    public static final Attributes.Key<Set<String>> SERVICE_KEYS_INFO = Attributes.Key.create("service-keys-info");
 
+    public DiscoveryNameResolver(String key, DiscoveryClient client, ServiceWatchRegistry watches,
+                                 ScheduledExecutorService scheduler, final Args args,
+                                 final GrpcClientProperties properties) {
+        this(key, Collections.singleton(key), false, client, watches, scheduler, args, properties);
+    }
 
-    public DiscoveryNameResolver(String key, DiscoveryClient client, final Args args) {
+    /**
+     * @param key       target of the channel
+     * @param keys      service keys to resolve
+     * @param watches   watches shared by all the resolvers
+     * @param scheduler scheduler of the refreshes, shared by all the resolvers
+     */
+    public DiscoveryNameResolver(String key, Collection<String> keys, boolean shared, DiscoveryClient client,
+                                 ServiceWatchRegistry watches, ScheduledExecutorService scheduler,
+                                 final Args args, final GrpcClientProperties properties) {
         this.key = key;
+        this.keys.addAll(keys);
+        this.shared = shared;
         this.client = client;
+        this.watches = requireNonNull(watches, "watches");
+        this.scheduler = requireNonNull(scheduler, "scheduler");
+        this.properties = properties;
         this.syncContext = requireNonNull(args.getSynchronizationContext(), "syncContext");
     }
 
 
     @Override
     public void refresh() {
-        /*this.syncContext.execute(() -> {
-            this.resolving = false;
-            if (this.listener != null) {
-                resolve();
-            }
-        });*/
+        if (this.listener == null || this.shutdown || this.refreshHandle != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - this.lastRefreshNanos > MAX_REFRESH_BACKOFF_NANOS) {
+            // no refresh for a while, start over
+            this.refreshBackoffNanos = INITIAL_REFRESH_BACKOFF_NANOS;
+        }
+        long delay = Math.max(0, this.lastRefreshNanos + this.refreshBackoffNanos - now);
+        this.refreshHandle = this.syncContext.schedule(() -> {
+            this.refreshHandle = null;
+            this.lastRefreshNanos = System.nanoTime();
+            this.refreshBackoffNanos = Math.min(this.refreshBackoffNanos * 2, MAX_REFRESH_BACKOFF_NANOS);
+            resolvingAddress();
+        }, delay, TimeUnit.NANOSECONDS, this.scheduler);
     }
 
     @Override
@@ -68,39 +157,162 @@ public class DiscoveryNameResolver extends NameResolver {
         resolve();
     }
 
+    /**
+     * adds a service key to a shared resolver, resolving it right away if started
+     */
+    void addKey(String serviceKey) {
+        if (!this.keys.add(serviceKey) || this.listener == null || this.shutdown) {
+            return;
+        }
+        this.watches.acquire(serviceKey, this).whenComplete((v, throwable) -> resolvingAddress());
+    }
+
     private void resolve() {
         log.debug("Scheduled resolve for {}", this.key);
         if (this.resolving) {
             return;
         }
         this.resolving = true;
-        resolvingAddress();
-        executorService.submit(() -> this.client.watch(key));
+        // watch first, so the lookup below is served from the client side cache
+        final CompletableFuture<Void> ready = CompletableFuture.allOf(
+                this.keys.stream().map(k -> this.watches.acquire(k, this)).toArray(CompletableFuture[]::new));
+        this.watched = ready;
+        if (!ready.isDone()) {
+            // a registry that can't be reached mustn't hold the calls of the channel forever
+            final long timeoutNanos = this.properties.getResolveTimeout().toNanos();
+            this.resolveTimeoutHandle = this.syncContext.schedule(() -> {
+                this.resolveTimeoutHandle = null;
+                if (ready.isDone()) {
+                    return;
+                }
+                log.warn("watch of services {} not ready in {}ms, resolve without it", this.key,
+                        TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+                if (!this.resolved) {
+                    onUnavailable("services of " + this.key + " not resolved in time", null);
+                }
+                resolvingAddress();
+            }, timeoutNanos, TimeUnit.NANOSECONDS, this.scheduler);
+        }
+        ready.whenComplete((v, throwable) -> {
+            this.syncContext.execute(() -> {
+                if (this.resolveTimeoutHandle != null) {
+                    this.resolveTimeoutHandle.cancel();
+                    this.resolveTimeoutHandle = null;
+                }
+            });
+            resolvingAddress();
+        });
+    }
+
+    /**
+     * in the sync context. the next result is published whatever it is, the load balancer saw the error
+     */
+    private void onUnavailable(String description, Throwable cause) {
+        this.resolved = true;
+        this.published = Collections.emptyMap();
+        this.publishedAttributes = null;
+        this.listener.onError(Status.UNAVAILABLE.withDescription(description).withCause(cause));
     }
 
     protected void resolvingAddress() {
-        final List<EquivalentAddressGroup> targets = Lists.newArrayList();
-        Set<ServiceEntity> services = this.client.findServices(key);
+        if (this.listener == null || this.shutdown) {
+            // not started yet, start() will resolve
+            return;
+        }
+        final Map<String, CompletableFuture<Set<ServiceEntity>>> lookups = Maps.newLinkedHashMap();
+        for (String serviceKey : this.keys) {
+            lookups.put(serviceKey, this.client.findServicesAsync(serviceKey));
+        }
+        CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0]))
+                .whenComplete((v, throwable) -> this.syncContext.execute(() -> {
+                    if (this.shutdown) {
+                        return;
+                    }
+                    if (throwable != null) {
+                        log.warn("find service {} error", key, throwable);
+                        onUnavailable("find service " + key + " error", throwable);
+                        return;
+                    }
+                    final Map<String, EquivalentAddressGroup> targets = Maps.newLinkedHashMap();
+                    lookups.forEach((serviceKey, lookup) -> onServices(serviceKey, lookup.join(), targets));
+                    if (targets.isEmpty() && !this.watched.isDone()) {
+                        // nothing known yet, the watches publish once they are ready
+                        if (!this.published.isEmpty() || !this.resolved) {
+                            onUnavailable("no service of " + key + " found, the watch isn't ready yet", null);
+                        }
+                        return;
+                    }
+                    final Attributes attributes = this.shared
+                            ? Attributes.newBuilder().set(SERVICE_KEYS_INFO, ImmutableSet.copyOf(lookups.keySet())).build()
+                            : Attributes.EMPTY;
+                    if (targets.equals(this.published) && attributes.equals(this.publishedAttributes)) {
+                        log.debug("services of {} unchanged", key);
+                        return;
+                    }
+                    this.resolved = true;
+                    this.published = targets;
+                    this.publishedAttributes = attributes;
+                    this.listener.onAddresses(Lists.newArrayList(targets.values()), attributes);
+                }));
+    }
+
+    /**
+     * @param targets endpoint -> its group, the groups published before are reused for the unchanged endpoints
+     */
+    private void onServices(String serviceKey, Set<ServiceEntity> services, Map<String, EquivalentAddressGroup> targets) {
         if (!CollectionUtils.isEmpty(services)) {
-            log.info("find service {} , hosts size {}", key, services.size());
-            Map<Integer, List<ServiceEntity>> serviceMap = services.stream().collect(
-                    Collectors.groupingBy(ServiceEntity::getLbWeight)
-            );
-            for (Integer lbWeight : serviceMap.keySet()) {
-                Attributes attributes = Attributes.newBuilder()
-                        .set(LB_WEIGHT_INFO, lbWeight)
-                        .build();
-                List<ServiceEntity> serviceEntities = serviceMap.get(lbWeight);
-                List<SocketAddress> address = serviceEntities.stream().map(p -> new InetSocketAddress(p.getHost(), p.getPort())).collect(Collectors.toList());
-                EquivalentAddressGroup addressGroup = new EquivalentAddressGroup(address, attributes);
-                targets.add(addressGroup);
+            log.info("find service {} , hosts size {}", serviceKey, services.size());
+            // one group per endpoint, so the load balancer keeps a subchannel per endpoint
+            for (ServiceEntity service : subset(services)) {
+                Attributes.Builder attributes = Attributes.newBuilder()
+                        .set(LB_WEIGHT_INFO, service.getLbWeight());
+                if (service.getEnv() != null) {
+                    attributes.set(ENV_INFO, service.getEnv());
+                }
+                if (this.shared) {
+                    attributes.set(SERVICE_KEY_INFO, serviceKey);
+                }
+                String endpoint = serviceKey + '@' + service.getHost() + ':' + service.getPort();
+                EquivalentAddressGroup previous = this.published.get(endpoint);
+                Attributes endpointAttributes = attributes.build();
+                if (previous != null && previous.getAttributes().equals(endpointAttributes)) {
+                    targets.put(endpoint, previous);
+                    continue;
+                }
+                SocketAddress address = previous != null ? previous.getAddresses().get(0)
+                        : new InetSocketAddress(service.getHost(), service.getPort());
+                targets.put(endpoint, new EquivalentAddressGroup(address, endpointAttributes));
             }
         } else {
-            log.warn("find no services {}", key);
+            log.warn("find no services {}", serviceKey);
+        }
+    }
+
+
+    /**
+     * rendezvous hashing: every endpoint is ranked by the hash of the client id and the endpoint, the client keeps
+     * the top ranked ones. an endpoint joining or leaving only changes the subsets it ranks in
+     */
+    private Collection<ServiceEntity> subset(Set<ServiceEntity> services) {
+        int subsetSize = this.properties.getSubsetSize();
+        if (subsetSize <= 0 || services.size() <= subsetSize) {
+            return services;
         }
-        this.listener.onAddresses(targets, Attributes.EMPTY);
+        String clientId = this.properties.getSubsetClientId();
+        return services.stream()
+                .sorted(Comparator.comparingLong((ServiceEntity service) -> rank(clientId, service)).reversed())
+                .limit(subsetSize)
+                .collect(Collectors.toList());
     }
 
+    private static long rank(String clientId, ServiceEntity service) {
+        return Hashing.murmur3_128().newHasher()
+                .putString(clientId, StandardCharsets.UTF_8)
+                .putString(service.getHost(), StandardCharsets.UTF_8)
+                .putInt(service.getPort())
+                .hash()
+                .asLong();
+    }
 
     @Override
     public String getServiceAuthority() {
@@ -109,6 +321,24 @@ public class DiscoveryNameResolver extends NameResolver {
 
     @Override
     public void shutdown() {
+        if (this.shutdown) {
+            return;
+        }
+        this.shutdown = true;
+        if (this.refreshHandle != null) {
+            this.refreshHandle.cancel();
+            this.refreshHandle = null;
+        }
+        if (this.resolveTimeoutHandle != null) {
+            this.resolveTimeoutHandle.cancel();
+            this.resolveTimeoutHandle = null;
+        }
+        for (String serviceKey : this.keys) {
+            this.watches.release(serviceKey, this);
+        }
+    }
 
+    boolean isShutdown() {
+        return this.shutdown;
     }
 }
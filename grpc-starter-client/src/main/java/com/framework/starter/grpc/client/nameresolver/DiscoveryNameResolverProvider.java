@@ -2,16 +2,19 @@ package com.framework.starter.grpc.client.nameresolver;
 
 import com.framework.starter.discovery.client.DiscoveryClient;
 import com.framework.starter.discovery.event.RegisterEvent;
+import com.framework.starter.grpc.client.config.GrpcClientProperties;
 import com.google.common.collect.Sets;
 import io.grpc.NameResolver;
 import io.grpc.NameResolverProvider;
-import io.netty.util.internal.SuppressJava6Requirement;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
 
 import java.net.URI;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 功能概述
@@ -23,12 +26,36 @@ import java.util.concurrent.atomic.AtomicReference;
 @Slf4j
 public class DiscoveryNameResolverProvider extends NameResolverProvider {
 
-    private final Set<DiscoveryNameResolver> discoveryNameResolver = Sets.newConcurrentHashSet();
+    /**
+     * service key -> its watch and the resolvers holding it
+     */
+    private final ServiceWatchRegistry watches;
+    /**
+     * service keys with an address update already scheduled in the current window
+     */
+    private final Set<String> pendingKeys = Sets.newConcurrentHashSet();
     public static final String DISCOVERY_SCHEME = "/services";
+    /**
+     * target of the channel shared by all the service keys, see {@link GrpcClientProperties#isShareTransports()}
+     */
+    public static final String SHARED_TARGET = DISCOVERY_SCHEME + "/shared";
+    /**
+     * service keys resolved by the shared resolvers
+     */
+    private final Set<String> sharedKeys = Sets.newConcurrentHashSet();
+    private final Set<DiscoveryNameResolver> sharedResolvers = Sets.newConcurrentHashSet();
     private final DiscoveryClient client;
+    private final GrpcClientProperties properties;
+    /**
+     * runs the refreshes of all the resolvers
+     */
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("discovery-refresh-", true));
 
-    public DiscoveryNameResolverProvider(final DiscoveryClient client) {
+    public DiscoveryNameResolverProvider(final DiscoveryClient client, final GrpcClientProperties properties) {
         this.client = client;
+        this.properties = properties;
+        this.watches = new ServiceWatchRegistry(client);
     }
 
     @Override
@@ -38,28 +65,74 @@ public class DiscoveryNameResolverProvider extends NameResolverProvider {
             if (key == null || key.length() <= 1) {
                 throw new IllegalArgumentException("key can't be blank!");
             }
+            if (SHARED_TARGET.equals(key)) {
+                return newSharedNameResolver(args);
+            }
             log.debug("start to find services, key {}", key);
-            final AtomicReference<DiscoveryNameResolver> reference = new AtomicReference<>();
-            final DiscoveryNameResolver discoveryNameResolver =
-                    new DiscoveryNameResolver(key, this.client, args);
-            reference.set(discoveryNameResolver);
-            this.discoveryNameResolver.add(discoveryNameResolver);
-            return discoveryNameResolver;
+            return new DiscoveryNameResolver(key, this.client, this.watches, this.refreshExecutor, args, this.properties);
         }
         return null;
     }
 
+    private synchronized NameResolver newSharedNameResolver(NameResolver.Args args) {
+        log.debug("start to find services, shared keys {}", this.sharedKeys);
+        final DiscoveryNameResolver discoveryNameResolver = new DiscoveryNameResolver(SHARED_TARGET, this.sharedKeys,
+                true, this.client, this.watches, this.refreshExecutor, args, this.properties);
+        this.sharedResolvers.removeIf(DiscoveryNameResolver::isShutdown);
+        this.sharedResolvers.add(discoveryNameResolver);
+        return discoveryNameResolver;
+    }
+
+    /**
+     * Adds a service key to the resolvers of the {@link #SHARED_TARGET shared channel}, the ones created later
+     * resolve it too.
+     *
+     * @param key The service key called over the shared channel.
+     */
+    public synchronized void share(String key) {
+        if (!this.sharedKeys.add(key)) {
+            return;
+        }
+        this.sharedResolvers.removeIf(DiscoveryNameResolver::isShutdown);
+        for (DiscoveryNameResolver sharedResolver : this.sharedResolvers) {
+            sharedResolver.addKey(key);
+        }
+    }
+
     /**
-     * Triggers a refresh of the registered name resolvers.
+     * Schedules a refresh of the name resolvers of the changed key, all the changes of that key arriving within
+     * {@link GrpcClientProperties#getResolveWindow()} are applied by one refresh.
      *
      * @param event The event that triggered the update.
      */
     @EventListener(RegisterEvent.class)
     private void listener(RegisterEvent event) {
-        log.debug("listener happen thread:{}", Thread.currentThread().getName());
-        for (DiscoveryNameResolver nameResolver : discoveryNameResolver) {
-            nameResolver.resolvingAddress();
+        log.debug("listener happen thread:{}, key:{}, revision:{}", Thread.currentThread().getName(),
+                event.getKey(), event.getRevision());
+        if (event.getKey() == null) {
+            this.watches.getKeys().forEach(this::scheduleRefresh);
+        } else if (this.watches.getKeys().contains(event.getKey())) {
+            scheduleRefresh(event.getKey());
+        }
+    }
+
+    private void scheduleRefresh(String key) {
+        if (!this.pendingKeys.add(key)) {
+            return;
         }
+        this.refreshExecutor.schedule(() -> {
+            this.pendingKeys.remove(key);
+            for (DiscoveryNameResolver nameResolver : this.watches.getResolvers(key)) {
+                nameResolver.resolvingAddress();
+            }
+        }, this.properties.getResolveWindow().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * stop the refreshes, called when the bean is destroyed
+     */
+    public void close() {
+        this.refreshExecutor.shutdownNow();
     }
 
     @Override
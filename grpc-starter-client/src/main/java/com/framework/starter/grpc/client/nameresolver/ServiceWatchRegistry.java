@@ -0,0 +1,96 @@
+package com.framework.starter.grpc.client.nameresolver;
+
+import com.framework.starter.discovery.client.DiscoveryClient;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 功能概述    one discovery watch per service key, shared by all the resolvers of that key. the watch is started by
+ * the first resolver acquiring the key and stopped with {@link DiscoveryClient#unwatch(String)} when the last one
+ * releases it, so channels created and shut down again don't pile up watches and cached services.
+ * className:      ServiceWatchRegistry
+ * package:        com.framework.starter.grpc.client.nameresolver
+ * author:         Gavin.Xu
+ * date:           2021/7/20
+ */
+@Slf4j
+public class ServiceWatchRegistry {
+
+    private final DiscoveryClient client;
+    /**
+     * service key -> its watch, guarded by this
+     */
+    private final Map<String, Watch> watches = new HashMap<>();
+
+    public ServiceWatchRegistry(DiscoveryClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param key      service key to watch
+     * @param resolver resolver holding the watch until it releases the key
+     * @return completes when the services of the key can be read, never exceptionally
+     */
+    public synchronized CompletableFuture<Void> acquire(String key, DiscoveryNameResolver resolver) {
+        Watch watch = this.watches.get(key);
+        if (watch == null || watch.failed) {
+            Watch started = watch == null ? new Watch() : watch;
+            // a failed watch is started again by the next resolver
+            started.failed = false;
+            started.ready = this.client.watchAsync(key).handle((v, throwable) -> {
+                if (throwable != null) {
+                    log.warn("watch service {} error", key, throwable);
+                    started.failed = true;
+                }
+                return null;
+            });
+            this.watches.put(key, started);
+            watch = started;
+        }
+        watch.resolvers.add(resolver);
+        return watch.ready;
+    }
+
+    /**
+     * the watch of the key is stopped once no resolver holds it
+     */
+    public synchronized void release(String key, DiscoveryNameResolver resolver) {
+        Watch watch = this.watches.get(key);
+        if (watch == null || !watch.resolvers.remove(resolver) || !watch.resolvers.isEmpty()) {
+            return;
+        }
+        this.watches.remove(key);
+        log.debug("no resolver of service {} left, stop watching it", key);
+        this.client.unwatch(key);
+    }
+
+    /**
+     * @return the resolvers holding the key
+     */
+    public synchronized List<DiscoveryNameResolver> getResolvers(String key) {
+        Watch watch = this.watches.get(key);
+        return watch == null ? Collections.emptyList() : ImmutableList.copyOf(watch.resolvers);
+    }
+
+    /**
+     * @return the keys held by some resolver
+     */
+    public synchronized Set<String> getKeys() {
+        return ImmutableSet.copyOf(this.watches.keySet());
+    }
+
+    private static final class Watch {
+        private final Set<DiscoveryNameResolver> resolvers = new LinkedHashSet<>();
+        private CompletableFuture<Void> ready;
+        private volatile boolean failed;
+    }
+}
@@ -7,7 +7,6 @@ import com.framework.starter.discovery.register.Registration;
 import com.framework.starter.discovery.service.ServiceEntity;
 import com.framework.starter.discovery.util.DiscoveryUtil;
 import com.framework.starter.grpc.server.config.GrpcServerProperties;
-import com.framework.util.json.ObjectMapperUtils;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
@@ -49,16 +48,18 @@ public class GrpcServerDiscoveryAutoConfiguration {
             String name = grpcServerProperties.getName();
             int lbWeight = grpcServerProperties.getLbWeight();
             String host = DiscoveryUtil.getHostIp();
-            String key = DiscoveryUtil.getKey(DiscoveryUtil.SERVICE_PREFIX, name, version, Protocol.GRPC.of());
-            String value = ObjectMapperUtils.toJSON(ServiceEntity.builder()
-                    .endPoint(DiscoveryUtil.getHostIp() + ":" + port)
+            String endPoint = host + ":" + port;
+            String key = DiscoveryUtil.getInstanceKey(
+                    DiscoveryUtil.getKey(DiscoveryUtil.SERVICE_PREFIX, name, version, Protocol.GRPC.of()), endPoint);
+            ServiceEntity serviceEntity = ServiceEntity.builder()
+                    .endPoint(endPoint)
                     .host(host)
                     .port(port)
                     .lbWeight(lbWeight)
                     .env(System.getProperty("env"))
-                    .build());
+                    .build();
             Registration registration = new Registration(discoveryClient);
-            registration.register(key, value);
+            registration.register(key, serviceEntity);
             registrationList.add(registration);
         }
         return registrationList;
@@ -1,12 +1,18 @@
 package com.framework.starter.sentinel.autoconfigure;
 
+import com.alibaba.csp.sentinel.slots.block.degrade.DegradeRule;
+import com.alibaba.csp.sentinel.slots.block.degrade.DegradeRuleManager;
 import com.alibaba.csp.sentinel.slots.block.flow.FlowRule;
 import com.alibaba.csp.sentinel.slots.block.flow.FlowRuleManager;
+import com.framework.starter.sentinel.SentinelDegrade;
 import com.framework.starter.sentinel.SentinelFlow;
 import com.framework.starter.sentinel.config.SentinelProperties;
+import com.framework.starter.sentinel.grpc.interceptors.SentinelGrpcClientDegradeInterceptor;
 import com.framework.starter.sentinel.grpc.interceptors.SentinelGrpcServerFlowInterceptor;
+import io.grpc.ClientInterceptor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -58,8 +64,36 @@ public class SentinelAutoConfiguration {
 
         if (!CollectionUtils.isEmpty(sentinelProperties.getDegradeMap())){
             log.debug("init sentinel degrade config...");
+            Map<String, SentinelDegrade> degradeMap = sentinelProperties.getDegradeMap();
+            List<DegradeRule> rules = new ArrayList<>();
+            for (String resourceName : degradeMap.keySet()) {
+                SentinelDegrade degrade = degradeMap.get(resourceName);
+                DegradeRule degradeRule = new DegradeRule(resourceName);
+                degradeRule.setGrade(degrade.getGrade());
+                degradeRule.setCount(degrade.getCount());
+                degradeRule.setTimeWindow(degrade.getTimeWindow());
+                degradeRule.setMinRequestAmount(degrade.getMinRequestAmount());
+                degradeRule.setSlowRatioThreshold(degrade.getSlowRatioThreshold());
+                degradeRule.setStatIntervalMs(degrade.getStatIntervalMs());
+                rules.add(degradeRule);
+            }
+            DegradeRuleManager.loadRules(rules);
         }
         return new Object();
     }
 
+    /**
+     * the grpc client starter is optional, the client interceptor is only registered along with it
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(value = ClientInterceptor.class,
+            name = "com.framework.starter.grpc.client.interceptor.GrpcGlobalClientInterceptor")
+    static class SentinelGrpcClientConfiguration {
+
+        @Bean
+        SentinelGrpcClientDegradeInterceptor sentinelGrpcClientDegradeInterceptor(final SentinelProperties sentinelProperties){
+            return new SentinelGrpcClientDegradeInterceptor(sentinelProperties.getDegradeMap());
+        }
+    }
+
 }
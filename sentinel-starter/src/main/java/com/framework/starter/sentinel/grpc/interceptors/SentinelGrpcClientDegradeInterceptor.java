@@ -0,0 +1,124 @@
+package com.framework.starter.sentinel.grpc.interceptors;
+
+import com.alibaba.csp.sentinel.AsyncEntry;
+import com.alibaba.csp.sentinel.EntryType;
+import com.alibaba.csp.sentinel.SphU;
+import com.alibaba.csp.sentinel.Tracer;
+import com.alibaba.csp.sentinel.slots.block.BlockException;
+import com.framework.starter.grpc.client.interceptor.FailingClientCall;
+import com.framework.starter.grpc.client.interceptor.GrpcGlobalClientInterceptor;
+import com.framework.starter.grpc.client.interceptor.InterceptorOrder;
+import com.framework.starter.sentinel.SentinelDegrade;
+import io.grpc.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 功能概述    circuit breaker of the outbound calls, by the degrade rules of {@link SentinelDegrade}. a rule is named
+ * after the full method name, like {@code com.example.AdService/Bid}, or the full service name, the rule of the
+ * method wins. while the circuit of a call is open, the call fails locally with {@code UNAVAILABLE} and never
+ * reaches the channel. the latency of every call and its failures from the server health feed the slow call ratio,
+ * error ratio and error count of the rules.
+ * className:      SentinelGrpcClientDegradeInterceptor
+ * package:        com.framework.starter.sentinel.grpc.interceptors
+ * author:         Gavin.Xu
+ * date:           2021/7/26
+ */
+@Slf4j
+@GrpcGlobalClientInterceptor
+@Order(InterceptorOrder.ORDER_CIRCUIT_BREAKER)
+public class SentinelGrpcClientDegradeInterceptor implements ClientInterceptor {
+
+    private static final Status DEGRADE_BLOCK = Status.UNAVAILABLE.withDescription(
+            "Circuit breaker open (client side)");
+
+    private final Map<String, SentinelDegrade> degradeMap;
+
+    public SentinelGrpcClientDegradeInterceptor(Map<String, SentinelDegrade> degradeMap) {
+        this.degradeMap = degradeMap == null ? Collections.emptyMap() : degradeMap;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        final String resourceName = resourceOf(method);
+        if (resourceName == null) {
+            return next.newCall(method, callOptions);
+        }
+        final ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+        return new ForwardingClientCall<ReqT, RespT>() {
+
+            /**
+             * the call failing in its place while the circuit is open, the rest of the call goes to it
+             */
+            private ClientCall<ReqT, RespT> blocked;
+
+            @Override
+            protected ClientCall<ReqT, RespT> delegate() {
+                return this.blocked != null ? this.blocked : call;
+            }
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                final AsyncEntry entry;
+                try {
+                    entry = SphU.asyncEntry(resourceName, EntryType.OUT);
+                } catch (BlockException e) {
+                    log.debug("SentinelGrpcClientDegradeInterceptor degrade block:{}", resourceName);
+                    // the real call is never started, nothing to cancel
+                    this.blocked = new FailingClientCall<>(DEGRADE_BLOCK, callOptions);
+                    this.blocked.start(responseListener, headers);
+                    return;
+                }
+                try {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            if (isFailure(status)) {
+                                Tracer.traceEntry(status.asRuntimeException(trailers), entry);
+                            }
+                            entry.exit();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                } catch (RuntimeException e) {
+                    Tracer.traceEntry(e, entry);
+                    entry.exit();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return name of the rule of the method, null if none
+     */
+    private String resourceOf(MethodDescriptor<?, ?> method) {
+        if (this.degradeMap.containsKey(method.getFullMethodName())) {
+            return method.getFullMethodName();
+        }
+        String serviceName = method.getServiceName();
+        if (serviceName != null && this.degradeMap.containsKey(serviceName)) {
+            return serviceName;
+        }
+        return null;
+    }
+
+    /**
+     * only the failures that tell about the server health, not the application errors
+     */
+    private static boolean isFailure(Status status) {
+        switch (status.getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case INTERNAL:
+            case UNKNOWN:
+            case RESOURCE_EXHAUSTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}